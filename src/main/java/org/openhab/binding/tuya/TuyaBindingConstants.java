@@ -41,4 +41,8 @@ public class TuyaBindingConstants {
     public final static String CHANNEL_DURATION = "duration";
     public final static String CHANNEL_CURTAIN = "curtain";
 
+    // Diagnostic channel ids.
+    public final static String CHANNEL_HEARTBEAT_RTT = "heartbeatRtt";
+    public final static String CHANNEL_COMMAND_LATENCY = "commandLatency";
+
 }
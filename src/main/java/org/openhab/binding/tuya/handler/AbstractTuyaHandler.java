@@ -8,14 +8,17 @@
  */
 package org.openhab.binding.tuya.handler;
 
+import static org.openhab.binding.tuya.TuyaBindingConstants.*;
 import static org.openhab.binding.tuya.internal.data.CommandByte.*;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 import org.openhab.binding.tuya.internal.CommandDispatcher;
 import org.openhab.binding.tuya.internal.annotations.Property;
@@ -27,10 +30,15 @@ import org.openhab.binding.tuya.internal.discovery.DeviceRepository;
 import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
 import org.openhab.binding.tuya.internal.exceptions.HandlerInitializationException;
 import org.openhab.binding.tuya.internal.exceptions.UnsupportedVersionException;
+import org.openhab.binding.tuya.internal.jfr.StateUpdateEvent;
+import org.openhab.binding.tuya.internal.net.ClientMetrics;
+import org.openhab.binding.tuya.internal.net.ConnectionScheduler;
 import org.openhab.binding.tuya.internal.net.TcpConfig;
 import org.openhab.binding.tuya.internal.net.TuyaClient;
 import org.openhab.binding.tuya.internal.net.TuyaClient.Event;
 import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.thing.Channel;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
@@ -59,29 +67,161 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
 
     protected TuyaClient tuyaClient;
     protected final CommandDispatcher commandDispatcher;
-    private ScheduledFuture<?> watchdog;
+    private BiFunction<String, DeviceDescriptor, Boolean> discoveryCallback;
+
+    // The last state sent to openHAB for each channel. Key is the channel id.
+    private final ConcurrentHashMap<String, State> lastStates = new ConcurrentHashMap<>();
+    private final AtomicLong emittedUpdates = new AtomicLong();
+    private final AtomicLong suppressedUpdates = new AtomicLong();
+
+    // States published before the device confirmed them.
+    private final OptimisticUpdates optimisticUpdates;
 
     public AbstractTuyaHandler(Thing thing) {
         super(thing);
         this.commandDispatcher = new CommandDispatcher(thing.getUID());
+        this.optimisticUpdates = new OptimisticUpdates(thing.getThingTypeUID());
     }
 
     /**
-     * Update the states of channels that are changed.
+     * Update the states of channels that are changed. Channels that still have the last known state are not updated
+     * again, to avoid flooding the event bus with devices that report their status every few seconds.
      */
     protected void updateStates(Message message, Class<? extends DeviceState> clazz) {
+        if (!message.hasDps()) {
+            return;
+        }
+        StateUpdateEvent event = new StateUpdateEvent();
+        event.begin();
+        long emitted = emittedUpdates.get();
+        long suppressed = suppressedUpdates.get();
         try {
             DeviceState dev = message.toDeviceState(clazz);
             if (dev != null) {
                 BiConsumer<String, State> handler = (channel, state) -> {
-                    updateState(new ChannelUID(thing.getUID(), channel), state);
+                    optimisticUpdates.reconcile(channel, state);
+                    updateChangedState(channel, state);
                 };
                 dev.forChangedProperties(handler);
+                logger.trace("Channel updates for {}: {} emitted, {} suppressed.", thing.getUID(), emittedUpdates,
+                        suppressedUpdates);
             }
         } catch (JsonSyntaxException e) {
             logger.error("Message invalid", e);
             logger.debug("Message: {}", message.getData());
         }
+        if (event.shouldCommit()) {
+            event.devId = id;
+            event.updated = (int) (emittedUpdates.get() - emitted);
+            event.suppressed = (int) (suppressedUpdates.get() - suppressed);
+            event.commit();
+        }
+    }
+
+    /**
+     * Record the state as last known state of the channel, so later updates with the same state are suppressed.
+     */
+    @Override
+    protected void updateState(ChannelUID channelUID, State state) {
+        lastStates.put(channelUID.getId(), state);
+        emittedUpdates.incrementAndGet();
+        super.updateState(channelUID, state);
+    }
+
+    /**
+     * Publish the states that result from a command right away, instead of waiting for the device to report them.
+     * States that change a known state are reverted when the device does not confirm them in time. Channels without a
+     * known state, or that already have the state, are not tracked: there is nothing to revert to.
+     *
+     * @param sent the state sent to the device.
+     */
+    protected void publishOptimistic(DeviceState<?> sent) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(OPTIMISTIC_TIMEOUT_SECONDS);
+        sent.forChangedProperties((channel, state) -> {
+            State previous = lastStates.get(channel);
+            if (previous != null && !previous.equals(state)) {
+                optimisticUpdates.expect(channel, previous, state, deadline);
+            }
+            updateState(new ChannelUID(thing.getUID(), channel), state);
+        });
+        scheduler.schedule(() -> {
+            if (optimisticUpdates.expire(System.currentTimeMillis(), this::revertState)) {
+                sendStatusQuery();
+            }
+        }, OPTIMISTIC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Restore the state of a channel after an optimistic update was not confirmed.
+     */
+    private void revertState(String channel, State previous) {
+        if (previous != null) {
+            updateState(new ChannelUID(thing.getUID(), channel), previous);
+        }
+    }
+
+    /**
+     * Update the diagnostic channels, if they are linked and their value changed.
+     */
+    private void updateDiagnostics() {
+        TuyaClient client = tuyaClient;
+        if (client == null) {
+            return;
+        }
+        ClientMetrics metrics = client.getMetrics();
+        if (isLinked(CHANNEL_HEARTBEAT_RTT)) {
+            long micros = metrics.get(ClientMetrics.Latency.HEARTBEAT_RTT).getPercentileMicros(50);
+            updateChangedState(CHANNEL_HEARTBEAT_RTT, new DecimalType(micros / 1000.0));
+        }
+        if (isLinked(CHANNEL_COMMAND_LATENCY)) {
+            long micros = metrics.get(ClientMetrics.Latency.COMMAND_ACK).getPercentileMicros(90);
+            updateChangedState(CHANNEL_COMMAND_LATENCY, new DecimalType(micros / 1000.0));
+        }
+    }
+
+    /**
+     * Update the state of the channel, unless it already has the state.
+     */
+    private void updateChangedState(String channel, State state) {
+        if (state.equals(lastStates.get(channel))) {
+            suppressedUpdates.incrementAndGet();
+        } else {
+            updateState(new ChannelUID(thing.getUID(), channel), state);
+        }
+    }
+
+    /**
+     * Forget the last known states, so the next status message updates all channels.
+     */
+    protected void resyncStates() {
+        lastStates.clear();
+    }
+
+    /**
+     * Return the number of channel updates sent to openHAB.
+     *
+     * @return the number of updates.
+     */
+    public long getEmittedUpdates() {
+        return emittedUpdates.get();
+    }
+
+    /**
+     * Return the number of channel updates that were suppressed because the state did not change.
+     *
+     * @return the number of suppressed updates.
+     */
+    public long getSuppressedUpdates() {
+        return suppressedUpdates.get();
+    }
+
+    /**
+     * Return the client of the device.
+     *
+     * @return the client, or null if the device is not found yet.
+     */
+    public TuyaClient getClient() {
+        return tuyaClient;
     }
 
     /**
@@ -132,16 +272,15 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
             tuyaClient.stop();
             tuyaClient = null;
         }
-        if (watchdog != null) {
-            watchdog.cancel(true);
-            watchdog = null;
-        }
-        if (deviceDescriptor != null && deviceDescriptor.getDevId() != null) {
-            DeviceRepository.getInstance().removeHandler(deviceDescriptor.getDevId());
+        if (discoveryCallback != null) {
+            DeviceRepository.getInstance().removeHandler(id, discoveryCallback);
+            discoveryCallback = null;
         }
         if (commandDispatcher != null) {
             commandDispatcher.removeAllHandlers();
         }
+        resyncStates();
+        optimisticUpdates.clear();
         deviceDescriptor = null;
     }
 
@@ -187,13 +326,19 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
      */
     private void deviceFound(DeviceDescriptor device) throws UnsupportedVersionException {
         if (device != null && device.getDevId().equals(id)) {
-            if (deviceDescriptor == null || !deviceDescriptor.getIp().equals(device.getIp())) {
+            if (deviceDescriptor == null || !deviceDescriptor.getIp().equals(device.getIp())
+                    || deviceDescriptor.getVersion() != device.getVersion()) {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING,
                         "IP address: " + device.getIp());
                 deviceDescriptor = device;
                 updateProperties(false);
                 deviceDescriptor.setHandler(this);
+                DeviceRepository.getInstance().registerProductType(device.getProductKey(), thing.getThingTypeUID());
                 thing.getConfiguration().put("ip", device.getIp());
+                // Replace the client connected to the previous ip-address, or using the previous protocol version.
+                if (tuyaClient != null) {
+                    tuyaClient.stop();
+                }
                 tuyaClient = new TuyaClient(device);
 
                 // Handle error events
@@ -205,6 +350,7 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
 
                 // Handle connected event.
                 tuyaClient.on(Event.CONNECTED, (ev, msg) -> {
+                    resyncStates();
                     updateStatus(ThingStatus.ONLINE);
                     updateProperties(false);
                     // Ask status after some delay to let the items be created first.
@@ -221,16 +367,38 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
                 tuyaClient.on(Event.MESSAGE_RECEIVED, (ev, msg) -> {
                     if (msg.getCommandByte() == STATUS || msg.getCommandByte() == DP_QUERY) {
                         handleMessage(msg);
+                    } else if (msg.getCommandByte() == CONTROL && msg.getReturnCode() != 0) {
+                        // The device rejected the command.
+                        optimisticUpdates.revertAll(this::revertState);
+                    } else if (msg.getCommandByte() == CONTROL) {
+                        // The device accepted the command.
+                        optimisticUpdates.confirmAll();
                     }
+                    updateDiagnostics();
                     return true;
                 });
 
-                tuyaClient.start(scheduler);
+                tuyaClient.start(scheduler, getConnectPriority());
             }
 
         }
     }
 
+    /**
+     * Return the priority for connecting the device when many devices connect at the same time, e.g. at startup.
+     * Devices with linked channels are visible to the user, so they connect first.
+     *
+     * @return the priority, see ConnectionScheduler.
+     */
+    protected int getConnectPriority() {
+        for (Channel channel : thing.getChannels()) {
+            if (isLinked(channel.getUID())) {
+                return ConnectionScheduler.PRIORITY_HIGH;
+            }
+        }
+        return ConnectionScheduler.PRIORITY_LOW;
+    }
+
     /**
      * Handle specific commands for this type of device. Subclasses should initialize the command dispatcher with device
      * specific commands.
@@ -239,10 +407,14 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
     public void handleCommand(ChannelUID channelUID, Command command) {
         if (tuyaClient != null && tuyaClient.isStarted()) {
             if (command instanceof RefreshType) {
+                resyncStates();
                 sendStatusQuery();
             } else {
-                if (!commandDispatcher.dispatchCommand(tuyaClient, channelUID, command, CONTROL)) {
+                DeviceState sent = commandDispatcher.dispatch(tuyaClient, channelUID, command, CONTROL);
+                if (sent == null) {
                     logger.info("Command {} for channel {} could not be handled.", command, channelUID);
+                } else {
+                    publishOptimistic(sent);
                 }
             }
         }
@@ -280,39 +452,18 @@ public abstract class AbstractTuyaHandler extends BaseThingHandler implements Tc
             }
         }
 
-        // Initialize auto-discovery of the ip-address.
-        try {
-            DeviceRepository.getInstance().on(id, (ev, device) -> {
-                try {
-                    deviceFound(device.withLocalKey(localKey));
-                } catch (UnsupportedVersionException e) {
-                    throw new HandlerInitializationException(e.getMessage());
-                }
-                return true;
-            });
-        } catch (Exception e) {
-            throw new HandlerInitializationException("Device ID already assigned to a Tuya thing.");
-        }
+        // Initialize auto-discovery of the ip-address. Only the device with this id is delivered.
+        discoveryCallback = (ev, device) -> {
+            try {
+                deviceFound(device.withLocalKey(localKey));
+            } catch (UnsupportedVersionException e) {
+                throw new HandlerInitializationException(e.getMessage());
+            }
+            return true;
+        };
+        DeviceRepository.getInstance().on(id, discoveryCallback);
 
-        // Init dispatcher.
+        // Init dispatcher. Unhealthy connections are recovered by the FleetMonitor.
         initCommandDispatcher();
-
-        /*
-        // Start the watchdog to reinitialize when offline.
-        startWatchdog();
-        */
-    }
-
-    private void startWatchdog() {
-        if (watchdog == null) {
-            watchdog = scheduler.scheduleAtFixedRate(new Runnable() {
-                @Override
-                public void run() {
-                    if (getThing().getStatus() != ThingStatus.ONLINE) {
-                        initialize();
-                    }
-                }
-            }, WATCHDOG_CHECK_SECONDS, WATCHDOG_CHECK_SECONDS, TimeUnit.SECONDS);
-        }
     }
 }
@@ -16,7 +16,6 @@ import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.HSBType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.PercentType;
-import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 
 /**
@@ -57,31 +56,26 @@ public class ColorLedHandler extends AbstractTuyaHandler {
 
         // Brightness with PercentType.
         commandDispatcher.on(CHANNEL_BRIGHTNESS, PercentType.class, (ev, command) -> {
-            updateState(new ChannelUID(thing.getUID(), CHANNEL_COLOR_MODE), OnOffType.OFF);
             return new ColorLedState().withBrightness(command).withColorMode(OnOffType.OFF);
         });
 
         // Brightness with DecimalType (deprecated).
         commandDispatcher.on(CHANNEL_BRIGHTNESS, DecimalType.class, (ev, command) -> {
-            updateState(new ChannelUID(thing.getUID(), CHANNEL_COLOR_MODE), OnOffType.OFF);
             return new ColorLedState().withBrightness(command).withColorMode(OnOffType.OFF);
         });
 
         // Color temperature with PercentType.
         commandDispatcher.on(CHANNEL_COLOR_TEMPERATURE, PercentType.class, (ev, command) -> {
-            updateState(new ChannelUID(thing.getUID(), CHANNEL_COLOR_MODE), OnOffType.OFF);
             return new ColorLedState().withColorTemperature(command).withColorMode(OnOffType.OFF);
         });
 
         // Color temperature with DecimalType (deprecated).
         commandDispatcher.on(CHANNEL_COLOR_TEMPERATURE, DecimalType.class, (ev, command) -> {
-            updateState(new ChannelUID(thing.getUID(), CHANNEL_COLOR_MODE), OnOffType.OFF);
             return new ColorLedState().withColorTemperature(command).withColorMode(OnOffType.OFF);
         });
 
         // Color with HSBType.
         commandDispatcher.on(CHANNEL_COLOR, HSBType.class, (ev, command) -> {
-            updateState(new ChannelUID(thing.getUID(), CHANNEL_COLOR_MODE), OnOffType.ON);
             return new ColorLedState().withColor(command).withColorMode(OnOffType.ON);
         });
     }
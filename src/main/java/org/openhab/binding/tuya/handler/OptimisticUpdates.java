@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.handler;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.types.State;
+
+/**
+ * Channel states that are published before the device confirmed them. A pending state is confirmed when the device
+ * reports the same state or acknowledges the command, and reverted when the device reports another state, rejects the
+ * command, or does not report in time. The numbers of confirmed and reverted states are counted per thing type.
+ *
+ * @author Wim Vissers.
+ */
+public class OptimisticUpdates {
+
+    private static final ConcurrentHashMap<ThingTypeUID, Counters> COUNTERS = new ConcurrentHashMap<>();
+
+    // The pending states. Key is the channel id.
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Counters counters;
+
+    public OptimisticUpdates(ThingTypeUID thingTypeUID) {
+        counters = COUNTERS.computeIfAbsent(thingTypeUID, type -> new Counters());
+    }
+
+    /**
+     * Record a published state that the device has to confirm.
+     *
+     * @param channel the channel id.
+     * @param previous the state before the command.
+     * @param expected the published state.
+     * @param deadline the time the device has to confirm the state.
+     */
+    public void expect(String channel, State previous, State expected, long deadline) {
+        // Keep the state from before the first unconfirmed command.
+        pending.compute(channel,
+                (key, old) -> new Pending(old == null ? previous : old.previous, expected, deadline));
+    }
+
+    /**
+     * Compare a state reported by the device with the pending state of the channel.
+     *
+     * @param channel the channel id.
+     * @param actual the reported state.
+     */
+    public void reconcile(String channel, State actual) {
+        Pending p = pending.remove(channel);
+        if (p != null) {
+            if (p.expected.equals(actual)) {
+                counters.confirmed.incrementAndGet();
+            } else {
+                counters.reverted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Revert the pending states that are not confirmed in time.
+     *
+     * @param now the current time.
+     * @param revert called with the channel id and the state to restore.
+     * @return true when a state was reverted.
+     */
+    public boolean expire(long now, BiConsumer<String, State> revert) {
+        boolean reverted = false;
+        Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Pending> entry = iterator.next();
+            if (entry.getValue().deadline <= now) {
+                iterator.remove();
+                counters.reverted.incrementAndGet();
+                revert.accept(entry.getKey(), entry.getValue().previous);
+                reverted = true;
+            }
+        }
+        return reverted;
+    }
+
+    /**
+     * Revert all pending states, e.g. when the device rejected a command.
+     *
+     * @param revert called with the channel id and the state to restore.
+     */
+    public void revertAll(BiConsumer<String, State> revert) {
+        expire(Long.MAX_VALUE, revert);
+    }
+
+    /**
+     * Confirm all pending states, when the device acknowledged the command.
+     */
+    public void confirmAll() {
+        Iterator<String> iterator = pending.keySet().iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            counters.confirmed.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Return the number of optimistic states the devices of the type confirmed.
+     *
+     * @param thingTypeUID the thing type.
+     * @return the number of states.
+     */
+    public static long getConfirmed(ThingTypeUID thingTypeUID) {
+        Counters c = COUNTERS.get(thingTypeUID);
+        return c == null ? 0 : c.confirmed.get();
+    }
+
+    /**
+     * Return the number of optimistic states that were reverted for devices of the type.
+     *
+     * @param thingTypeUID the thing type.
+     * @return the number of states.
+     */
+    public static long getReverted(ThingTypeUID thingTypeUID) {
+        Counters c = COUNTERS.get(thingTypeUID);
+        return c == null ? 0 : c.reverted.get();
+    }
+
+    private static class Counters {
+
+        private final AtomicLong confirmed = new AtomicLong();
+        private final AtomicLong reverted = new AtomicLong();
+    }
+
+    private static class Pending {
+
+        private final State previous;
+        private final State expected;
+        private final long deadline;
+
+        Pending(State previous, State expected, long deadline) {
+            this.previous = previous;
+            this.expected = expected;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -8,16 +8,12 @@
  */
 package org.openhab.binding.tuya.internal;
 
-import java.io.IOException;
-import java.nio.channels.CancelledKeyException;
+import java.util.Arrays;
 import java.util.function.BiFunction;
 
-import org.openhab.binding.tuya.internal.CommandDispatcher.CommandEvent;
 import org.openhab.binding.tuya.internal.data.CommandByte;
 import org.openhab.binding.tuya.internal.data.DeviceState;
-import org.openhab.binding.tuya.internal.exceptions.ParseException;
 import org.openhab.binding.tuya.internal.net.TuyaClient;
-import org.openhab.binding.tuya.internal.util.SingleEventEmitter;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.ThingUID;
 import org.openhab.core.types.Command;
@@ -27,32 +23,59 @@ import org.slf4j.LoggerFactory;
 /**
  * Generic handler of openHAB commands. In particular, it dispatches commands to the right handlers for processing.
  * <p>
- * &lt;D&gt; Datatype for dispatching.
+ * The handlers are compiled into a small table with one route per channel. The handlers of a route are ordered from
+ * the most specific command class to the most general, so a command is handled by the handler of its own class, or
+ * else by the handler of the nearest supertype (e.g. a PercentType command by the DecimalType handler). Dispatching a
+ * command compares channel ids and checks classes only, it does not allocate or hash.
  *
  * @author Wim Vissers.
  */
-public class CommandDispatcher extends SingleEventEmitter<CommandEvent, Command, DeviceState> {
+public class CommandDispatcher {
 
     private Logger logger = LoggerFactory.getLogger(CommandDispatcher.class);
     private final ThingUID thingUID;
 
+    // The routing table, replaced as a whole when a handler is added.
+    private volatile Route[] routes = new Route[0];
+
     public CommandDispatcher(ThingUID thingUID) {
-        // eventCallbacks = new ConcurrentHashMap<>();
         this.thingUID = thingUID;
     }
 
     /**
-     * Add an event handler to the map.
+     * Add an event handler to the table.
      *
      * @param commandClass the command class.
      * @param callback the callback function that must return a DeviceState object to transmit, or null to avoid
      *            sending.
      * @return this CommandHandler.
      */
-    public CommandDispatcher on(String channel, Class<?> commandClass,
+    public synchronized CommandDispatcher on(String channel, Class<?> commandClass,
             BiFunction<CommandEvent, Command, DeviceState> callback) {
         CommandEvent event = new CommandEvent(new ChannelUID(thingUID, channel), commandClass);
-        on(event, callback);
+        Route[] table = routes;
+        int index = 0;
+        while (index < table.length && !table[index].channel.equals(channel)) {
+            index++;
+        }
+        if (index == table.length) {
+            table = Arrays.copyOf(table, table.length + 1);
+            table[index] = new Route(channel, new Target[0]);
+        } else {
+            table = table.clone();
+        }
+        table[index] = table[index].with(new Target(event, callback));
+        routes = table;
+        return this;
+    }
+
+    /**
+     * Remove all handlers.
+     *
+     * @return this CommandHandler.
+     */
+    public synchronized CommandDispatcher removeAllHandlers() {
+        routes = new Route[0];
         return this;
     }
 
@@ -66,89 +89,124 @@ public class CommandDispatcher extends SingleEventEmitter<CommandEvent, Command,
      * @return true when the command is handled, otherwise false.
      */
     public boolean dispatchCommand(TuyaClient client, ChannelUID channelUID, Command command, CommandByte commandByte) {
-        CommandEvent event = new CommandEvent(channelUID, command.getClass());
-        DeviceState data = emit(event, command);
+        return dispatch(client, channelUID, command, commandByte) != null;
+    }
+
+    /**
+     * Dispatch a single command, and return the state sent to the device.
+     *
+     * @param client the client object.
+     * @param channelUID the channel uid this client received in its handleCommand call.
+     * @param command the command this client received in its handleCommand call.
+     * @param commandByte the Tuya commandbyte that will be used to construct the message to the Tuya device.
+     * @return the state sent, or null when the command is not handled.
+     */
+    public DeviceState dispatch(TuyaClient client, ChannelUID channelUID, Command command, CommandByte commandByte) {
+        Target target = find(channelUID.getId(), command);
+        if (target == null) {
+            return null;
+        }
+        DeviceState data = target.callback.apply(target.event, command);
         if (data != null) {
             try {
                 client.send(data, commandByte);
-                event.setHandled(true);
+                return data;
             } catch (Exception e) {
                 logger.error("Error dispatching command.", e);
             }
         }
-        return event.isHandled();
+        return null;
     }
 
     /**
-     * The wrapper for the command and the channel the command applies to. The CommandHandler can be used to add
-     * handlers for combinations of ChannelUID and Command class. This class is only used internally in this command
-     * handler. It overrides the hashCode and equals methods, in order to use it as a key in a Map.
+     * Find the handler for the command on the channel.
      *
-     * @author Wim Vissers.
+     * @param channel the channel id.
+     * @param command the command.
+     * @return the handler, or null if there is none.
      */
-    public class CommandEvent {
+    private Target find(String channel, Command command) {
+        for (Route route : routes) {
+            if (route.channel == channel || route.channel.equals(channel)) {
+                for (Target target : route.targets) {
+                    if (target.event.commandClass.isInstance(command)) {
+                        return target;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
 
-        private final ChannelUID channelUID;
-        private final Class<?> commandClass;
-        private boolean handled;
+    /**
+     * The handlers of a single channel, most specific command class first.
+     */
+    private static class Route {
 
-        public CommandEvent(ChannelUID channelUID, Class<?> commandClass) {
-            this.channelUID = channelUID;
-            this.commandClass = commandClass;
-        }
+        private final String channel;
+        private final Target[] targets;
 
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + getOuterType().hashCode();
-            result = prime * result + ((channelUID == null) ? 0 : channelUID.hashCode());
-            result = prime * result + ((commandClass == null) ? 0 : commandClass.toString().hashCode());
-            return result;
+        Route(String channel, Target[] targets) {
+            this.channel = channel;
+            this.targets = targets;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
+        /**
+         * Return a copy of this route with the target added before the first target of a supertype.
+         */
+        Route with(Target target) {
+            Class<?> commandClass = target.event.commandClass;
+            int index = 0;
+            while (index < targets.length && !targets[index].event.commandClass.isAssignableFrom(commandClass)) {
+                index++;
             }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            CommandEvent other = (CommandEvent) obj;
-            if (!getOuterType().equals(other.getOuterType())) {
-                return false;
-            }
-            if (channelUID == null) {
-                if (other.channelUID != null) {
-                    return false;
-                }
-            } else if (!channelUID.equals(other.channelUID)) {
-                return false;
+            if (index < targets.length && targets[index].event.commandClass == commandClass) {
+                throw new IllegalArgumentException("Cannot add more than one callback for an event.");
             }
-            if (commandClass == null) {
-                if (other.commandClass != null) {
-                    return false;
-                }
-            } else if (!commandClass.equals(other.commandClass)) {
-                return false;
-            }
-            return true;
+            Target[] result = new Target[targets.length + 1];
+            System.arraycopy(targets, 0, result, 0, index);
+            result[index] = target;
+            System.arraycopy(targets, index, result, index + 1, targets.length - index);
+            return new Route(channel, result);
         }
+    }
+
+    /**
+     * A registered handler.
+     */
+    private static class Target {
+
+        private final CommandEvent event;
+        private final BiFunction<CommandEvent, Command, DeviceState> callback;
 
-        public boolean isHandled() {
-            return handled;
+        Target(CommandEvent event, BiFunction<CommandEvent, Command, DeviceState> callback) {
+            this.event = event;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * The channel and command class a handler is registered for. It is passed to the handler with each command.
+     *
+     * @author Wim Vissers.
+     */
+    public static class CommandEvent {
+
+        private final ChannelUID channelUID;
+        private final Class<?> commandClass;
+
+        public CommandEvent(ChannelUID channelUID, Class<?> commandClass) {
+            this.channelUID = channelUID;
+            this.commandClass = commandClass;
         }
 
-        public void setHandled(boolean handled) {
-            this.handled = handled;
+        public ChannelUID getChannelUID() {
+            return channelUID;
         }
 
-        private CommandDispatcher getOuterType() {
-            return CommandDispatcher.this;
+        public Class<?> getCommandClass() {
+            return commandClass;
         }
     }
 }
@@ -11,6 +11,7 @@ package org.openhab.binding.tuya.internal;
 import static org.openhab.binding.tuya.TuyaBindingConstants.*;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.openhab.binding.tuya.handler.ColorLedHandler;
@@ -19,12 +20,17 @@ import org.openhab.binding.tuya.handler.FilamentLedHandler;
 import org.openhab.binding.tuya.handler.PowerPlugHandler;
 import org.openhab.binding.tuya.handler.SirenHandler;
 import org.openhab.binding.tuya.handler.SwitchHandler;
+import org.openhab.binding.tuya.internal.net.ConnectionScheduler;
+import org.openhab.binding.tuya.internal.net.TcpConfig;
+import org.openhab.binding.tuya.internal.net.TuyaClientService;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingTypeUID;
 import org.openhab.core.thing.binding.BaseThingHandlerFactory;
 import org.openhab.core.thing.binding.ThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerFactory;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 
 /**
  * The {@link TuyaHandlerFactory} is responsible for creating things and thing
@@ -37,6 +43,42 @@ public class TuyaHandlerFactory extends BaseThingHandlerFactory {
 
     private static Set<ThingTypeUID> supportedThingTypes;
 
+    @Override
+    protected void activate(ComponentContext componentContext) {
+        super.activate(componentContext);
+        configure(componentContext.getProperties().get("connectConcurrency"),
+                componentContext.getProperties().get("commandBatchMillis"));
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> config) {
+        configure(config.get("connectConcurrency"), config.get("commandBatchMillis"));
+    }
+
+    /**
+     * Apply the binding configuration.
+     *
+     * @param connectConcurrency the number of devices connecting in parallel, may be null.
+     * @param commandBatchMillis the window for combining commands, may be null.
+     */
+    private void configure(Object connectConcurrency, Object commandBatchMillis) {
+        ConnectionScheduler.getInstance()
+                .setConcurrency(toInt(connectConcurrency, TcpConfig.DEFAULT_CONNECT_CONCURRENCY));
+        TuyaClientService.getInstance()
+                .setCommandBatchMillis(toInt(commandBatchMillis, TcpConfig.DEFAULT_COMMAND_BATCH_MILLIS));
+    }
+
+    private static int toInt(Object value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                // Use the default.
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public boolean supportsThingType(ThingTypeUID thingTypeUID) {
         if (supportedThingTypes == null) {
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.console;
+
+import static org.openhab.binding.tuya.TuyaBindingConstants.BINDING_ID;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openhab.binding.tuya.internal.net.ClientMetrics;
+import org.openhab.binding.tuya.internal.net.ClientMetrics.Counter;
+import org.openhab.binding.tuya.internal.net.ClientMetrics.Latency;
+import org.openhab.binding.tuya.internal.net.TrafficCapture;
+import org.openhab.binding.tuya.internal.net.TrafficReplay;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.io.console.Console;
+import org.openhab.core.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.core.io.console.extensions.ConsoleCommandExtension;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Console commands to inspect the binding, e.g. "tuya metrics".
+ *
+ * @author Wim Vissers.
+ */
+@Component(service = ConsoleCommandExtension.class)
+public class TuyaConsoleCommandExtension extends AbstractConsoleCommandExtension {
+
+    private static final String METRICS = "metrics";
+    private static final String CAPTURE = "capture";
+    private static final String REPLAY = "replay";
+    private static final String START = "start";
+    private static final String STOP = "stop";
+
+    public TuyaConsoleCommandExtension() {
+        super("tuya", "Inspect the Tuya binding.");
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length >= 1 && METRICS.equals(args[0])) {
+            if (args.length == 1) {
+                printFleet(console);
+            } else {
+                printDevice(console, args[1]);
+            }
+        } else if (args.length == 3 && CAPTURE.equals(args[0]) && START.equals(args[1])) {
+            startCapture(console, resolve(args[2]));
+        } else if (args.length == 2 && CAPTURE.equals(args[0]) && STOP.equals(args[1])) {
+            TrafficCapture.getInstance().stop();
+            console.println("Capture stopped.");
+        } else if ((args.length == 2 || args.length == 3) && REPLAY.equals(args[0])) {
+            replay(console, resolve(args[1]), args.length == 3 ? args[2] : "1");
+        } else {
+            printUsage(console);
+        }
+    }
+
+    /**
+     * Resolve a file name relative to the userdata folder of the binding.
+     */
+    private Path resolve(String name) {
+        return Paths.get(OpenHAB.getUserDataFolder(), BINDING_ID).resolve(name);
+    }
+
+    private void startCapture(Console console, Path file) {
+        try {
+            TrafficCapture.getInstance().start(file);
+            console.println("Capturing to " + file + ".");
+        } catch (IOException e) {
+            console.println("Capture could not be started: " + e.getMessage());
+        }
+    }
+
+    private void replay(Console console, Path file, String speed) {
+        double factor;
+        try {
+            factor = "max".equals(speed) ? 0 : Double.parseDouble(speed);
+        } catch (NumberFormatException e) {
+            console.println("Invalid speed: " + speed);
+            return;
+        }
+        try {
+            console.println(new TrafficReplay(file).run(factor).toString());
+        } catch (IOException e) {
+            console.println("Replay failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Print the fleet metrics, followed by a line per device.
+     */
+    private void printFleet(Console console) {
+        console.println("Fleet:");
+        console.print(ClientMetrics.fleet().report());
+        console.println("");
+        console.println(String.format("%-24s %6s %8s %8s %10s %10s", "device", "queue", "reconn", "errors",
+                "rtt p50", "ack p90"));
+        Map<String, ClientMetrics> devices = new TreeMap<>(ClientMetrics.devices());
+        for (Map.Entry<String, ClientMetrics> entry : devices.entrySet()) {
+            ClientMetrics m = entry.getValue();
+            long errors = m.get(Counter.CONNECT_ERRORS) + m.get(Counter.READ_ERRORS) + m.get(Counter.DECODE_ERRORS);
+            console.println(String.format("%-24s %6d %8d %8d %8.1fms %8.1fms", entry.getKey(), m.getQueueDepth(),
+                    m.get(Counter.RECONNECTS), errors, m.get(Latency.HEARTBEAT_RTT).getPercentileMicros(50) / 1000.0,
+                    m.get(Latency.COMMAND_ACK).getPercentileMicros(90) / 1000.0));
+        }
+    }
+
+    private void printDevice(Console console, String devId) {
+        ClientMetrics m = ClientMetrics.devices().get(devId);
+        if (m == null) {
+            console.println("Unknown device: " + devId);
+        } else {
+            console.println("Device " + devId + ":");
+            console.print(m.report());
+        }
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return Arrays.asList(buildCommandUsage(METRICS, "show the transport metrics of all devices"),
+                buildCommandUsage(METRICS + " <devId>", "show the transport metrics of a device"),
+                buildCommandUsage(CAPTURE + " start <file>", "capture the raw traffic to a file"),
+                buildCommandUsage(CAPTURE + " stop", "stop capturing"),
+                buildCommandUsage(REPLAY + " <file> [<speed>|max]",
+                        "replay a capture into the binding, at 1x speed by default"));
+    }
+}
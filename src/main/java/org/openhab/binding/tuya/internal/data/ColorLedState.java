@@ -10,13 +10,16 @@ package org.openhab.binding.tuya.internal.data;
 
 import static org.openhab.binding.tuya.TuyaBindingConstants.*;
 
+import java.io.IOException;
+
 import org.openhab.binding.tuya.internal.annotations.Channel;
 import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.types.Command;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This is the description of the status of the Color LED device.
@@ -76,41 +79,68 @@ public class ColorLedState extends DeviceState<ColorLedState.Dps> {
         return this;
     }
 
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        writeDp(writer, "1", dps.dp1);
+        writeDp(writer, "2", dps.dp2);
+        writeDp(writer, "3", dps.dp3);
+        writeDp(writer, "4", dps.dp4);
+        writeDp(writer, "5", dps.dp5);
+    }
+
+    @Override
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        switch (dp) {
+            case "1":
+                dps.dp1 = nextBoolean(reader);
+                return true;
+            case "2":
+                dps.dp2 = nextString(reader);
+                return true;
+            case "3":
+                dps.dp3 = nextInteger(reader);
+                return true;
+            case "4":
+                dps.dp4 = nextInteger(reader);
+                return true;
+            case "5":
+                dps.dp5 = nextString(reader);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * The device properties. Please note that we use boxed classes here,
      * to allow them to be null. In case of setting properties, null properties
-     * will not be serialized by Gson.
+     * will not be written.
      */
     public class Dps {
 
         /**
          * Lamp on/off.
          */
-        @SerializedName("1")
         private Boolean dp1;
 
         /**
          * Mode: "white" or "color".
          */
-        @SerializedName("2")
         private String dp2;
 
         /**
          * Brightness 0..255.
          */
-        @SerializedName("3")
         private Integer dp3;
 
         /**
          * Color temperature 0..255.
          */
-        @SerializedName("4")
         private Integer dp4;
 
         /**
          * Color as hex string.
          */
-        @SerializedName("5")
         private String dp5;
     }
 }
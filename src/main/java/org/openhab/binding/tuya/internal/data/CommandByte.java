@@ -26,6 +26,7 @@ public enum CommandByte {
     STATUS(map(Version.VALL, 8)),
     HEART_BEAT(map(Version.VALL, 9)),
     DP_QUERY(map(Version.V3_3, 10, Version.V3_5, 16)),
+    REQ_DEVINFO(map(Version.VALL, 37)),
     UNKNOWN(map(Version.VALL, 255));
 
     private Map<String, Integer> values;
@@ -8,9 +8,15 @@
  */
 package org.openhab.binding.tuya.internal.data;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.function.BiConsumer;
 
 import org.openhab.binding.tuya.internal.annotations.Channel;
@@ -22,10 +28,14 @@ import org.openhab.core.library.types.PercentType;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 
-import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 /**
  * Basic template for status messages to/from devices.
  *
@@ -112,30 +122,64 @@ public class DeviceState<T> {
      *
      * @param handler
      */
-    @SuppressWarnings("null")
     public void forChangedProperties(BiConsumer<String, State> handler) {
-        Class<?> theClass = this.getClass();
-        while (theClass != Object.class) {
-            for (Method method : theClass.getDeclaredMethods()) {
-                Channel channel = method.getAnnotation(Channel.class);
-                if (channel != null) {
-                    if (State.class.isAssignableFrom(method.getReturnType())) {
+        for (ChannelGetter getter : CHANNEL_GETTERS.get(getClass())) {
+            try {
+                State state = (State) getter.handle.invokeExact(this);
+                if (state != null) {
+                    handler.accept(getter.channel, state);
+                }
+            } catch (Throwable e) {
+                // ignore this
+                logger.error(e.toString());
+            }
+        }
+    }
+
+    /**
+     * The channel getters of each DeviceState class. The class hierarchy is inspected once per class, after that
+     * fanning out a message to the channels does not use reflection.
+     */
+    private static final ClassValue<ChannelGetter[]> CHANNEL_GETTERS = new ClassValue<ChannelGetter[]>() {
+        @Override
+        protected ChannelGetter[] computeValue(Class<?> type) {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType getterType = MethodType.methodType(State.class, DeviceState.class);
+            List<ChannelGetter> getters = new ArrayList<>();
+            Class<?> theClass = type;
+            while (theClass != Object.class) {
+                for (Method method : theClass.getDeclaredMethods()) {
+                    Channel channel = method.getAnnotation(Channel.class);
+                    if (channel != null && !method.isBridge() && method.getParameterCount() == 0
+                            && State.class.isAssignableFrom(method.getReturnType())) {
                         try {
-                            State state = (State) method.invoke(this);
-                            if (state != null) {
-                                handler.accept(channel.value(), state);
-                            }
-                        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                            // ignore this
-                            logger.error(e.toString());
+                            getters.add(new ChannelGetter(channel.value(),
+                                    lookup.unreflect(method).asType(getterType)));
+                        } catch (IllegalAccessException e) {
+                            LoggerFactory.getLogger(DeviceState.class).error("Channel {} is not accessible: {}",
+                                    channel.value(), e.toString());
                         }
                     }
                 }
+                theClass = theClass.getSuperclass();
             }
-            theClass = theClass.getSuperclass();
+            return getters.toArray(new ChannelGetter[getters.size()]);
         }
-    }
+    };
+
+    /**
+     * A channel id with the method handle of its getter.
+     */
+    private static class ChannelGetter {
 
+        private final String channel;
+        private final MethodHandle handle;
+
+        ChannelGetter(String channel, MethodHandle handle) {
+            this.channel = channel;
+            this.handle = handle;
+        }
+    }
 
     /**
      * Return true when the given QueueItem is conflicting with this item. This test is used to remove conflicting items
@@ -155,12 +199,112 @@ public class DeviceState<T> {
     }
 
     /**
-     * Return the json representation as a String.
+     * Return the json representation of the dps as a String.
      *
      * @return the json String.
      */
     public String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(dps);
+        StringWriter out = new StringWriter(64);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writeDps(writer);
+            writer.endObject();
+        } catch (IOException e) {
+            // A StringWriter does not throw.
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Read the dps object from the reader into this state. Dps that are not known to the subclass are skipped.
+     *
+     * @param reader the reader, positioned at the start of the dps object.
+     * @throws IOException when the data is not valid json.
+     */
+    public void readDps(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!readDp(reader.nextName(), reader)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Write the dps members of this state. Subclasses write every dp they know using the writeDp methods, which omit
+     * null values.
+     *
+     * @param writer the writer, positioned inside the dps object.
+     * @throws IOException
+     */
+    protected void writeDps(JsonWriter writer) throws IOException {
+    }
+
+    /**
+     * Read the value of a single dp. Subclasses read the dps they know and return true.
+     *
+     * @param dp the dp id.
+     * @param reader the reader, positioned at the value.
+     * @return true when the value is consumed, false to skip it.
+     * @throws IOException when the data is not valid json.
+     */
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        return false;
+    }
+
+    // Conversion methods for the dp codecs, to be used in subclasses.
+
+    protected void writeDp(JsonWriter writer, String dp, Boolean value) throws IOException {
+        if (value != null) {
+            writer.name(dp).value(value.booleanValue());
+        }
+    }
+
+    protected void writeDp(JsonWriter writer, String dp, Integer value) throws IOException {
+        if (value != null) {
+            writer.name(dp).value(value.longValue());
+        }
+    }
+
+    protected void writeDp(JsonWriter writer, String dp, String value) throws IOException {
+        if (value != null) {
+            writer.name(dp).value(value);
+        }
+    }
+
+    protected Boolean nextBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        } else if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        return reader.nextBoolean();
+    }
+
+    protected Integer nextInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        try {
+            return reader.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    protected String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        return reader.nextString();
     }
 }
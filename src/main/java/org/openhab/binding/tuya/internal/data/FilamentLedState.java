@@ -10,13 +10,16 @@ package org.openhab.binding.tuya.internal.data;
 
 import static org.openhab.binding.tuya.TuyaBindingConstants.*;
 
+import java.io.IOException;
+
 import org.openhab.binding.tuya.internal.annotations.Channel;
 import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.types.Command;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This is the description of the status of the Filament LED device.
@@ -61,29 +64,50 @@ public class FilamentLedState extends DeviceState<FilamentLedState.Dps> {
         return dps.dp3 == null ? null : toDecimalType(dps.dp3, 1000);
     }
 
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        writeDp(writer, "20", dps.dp1);
+        writeDp(writer, "22", dps.dp2);
+        writeDp(writer, "23", dps.dp3);
+    }
+
+    @Override
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        switch (dp) {
+            case "20":
+                dps.dp1 = nextBoolean(reader);
+                return true;
+            case "22":
+                dps.dp2 = nextInteger(reader);
+                return true;
+            case "23":
+                dps.dp3 = nextInteger(reader);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * The device properties. Please note that we use boxed classes here,
      * to allow them to be null. In case of setting properties, null properties
-     * will not be serialized by Gson.
+     * will not be written.
      */
     public class Dps {
 
         /**
          * Lamp on/off.
          */
-        @SerializedName("20")
         private Boolean dp1;
 
         /**
          * Brightness 0..255.
          */
-        @SerializedName("22")
         private Integer dp2;
 
         /**
          * Color temperature 0..255.
          */
-        @SerializedName("23")
         private Integer dp3;
     }
 }
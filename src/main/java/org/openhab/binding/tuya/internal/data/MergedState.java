@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openhab.binding.tuya.internal.net.QueueItem;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The dps of several states combined, to send the changes of several commands in a single message. When more states
+ * set the same dp, the last one wins. The dps of the states are collected from their dp codecs, without building a json
+ * tree.
+ *
+ * @author Wim Vissers.
+ */
+public class MergedState extends DeviceState<Map<String, Object>> {
+
+    private int count;
+
+    public MergedState() {
+        super();
+        dps = new LinkedHashMap<>();
+    }
+
+    /**
+     * Add the dps of the state.
+     *
+     * @param state the state.
+     * @return this state.
+     */
+    public MergedState merge(DeviceState<?> state) {
+        collect(state, dps);
+        count++;
+        return this;
+    }
+
+    /**
+     * Add the dps of an older state that this state does not set, e.g. of a queued message that this state supersedes.
+     * The dps set by this state win.
+     *
+     * @param older the older state.
+     * @return this state.
+     */
+    public MergedState mergeOlder(DeviceState<?> older) {
+        for (Map.Entry<String, Object> entry : dpsOf(older).entrySet()) {
+            dps.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        count += older instanceof MergedState ? ((MergedState) older).count : 1;
+        return this;
+    }
+
+    /**
+     * Return true when the other item is a CONTROL message that sets some of the same dps. The other item is more
+     * recent, so the values of this state are stale for those dps.
+     *
+     * @param other the item to compare to.
+     * @return true when conflicting.
+     */
+    @Override
+    public boolean isConflicting(QueueItem other) {
+        if (other == null || other.getCommandByte() != CommandByte.CONTROL || other.getDeviceState() == null) {
+            return false;
+        }
+        for (String dp : dpsOf(other.getDeviceState()).keySet()) {
+            if (dps.containsKey(dp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set a single dp.
+     *
+     * @param dp the dp id.
+     * @param value the value, a Boolean, Number or String.
+     * @return this state.
+     */
+    public MergedState set(String dp, Object value) {
+        if (value instanceof Boolean || value instanceof Number) {
+            dps.put(dp, value);
+        } else if (value != null) {
+            dps.put(dp, value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Return the number of merged states.
+     *
+     * @return the number of states.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private static Map<String, Object> dpsOf(DeviceState<?> state) {
+        if (state instanceof MergedState) {
+            return ((MergedState) state).dps;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        collect(state, result);
+        return result;
+    }
+
+    private static void collect(DeviceState<?> state, Map<String, Object> target) {
+        try {
+            state.writeDps(new DpCollector(target));
+        } catch (IOException e) {
+            // The collector does not write.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        for (Map.Entry<String, Object> entry : dps.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                writeDp(writer, entry.getKey(), (Boolean) value);
+            } else if (value instanceof Number) {
+                writer.name(entry.getKey()).value((Number) value);
+            } else {
+                writeDp(writer, entry.getKey(), (String) value);
+            }
+        }
+    }
+
+    /**
+     * A writer that puts the dps written by a dp codec in a map, instead of writing json.
+     */
+    private static class DpCollector extends JsonWriter {
+
+        private final Map<String, Object> dps;
+        private String dp;
+
+        DpCollector(Map<String, Object> dps) {
+            super(Writer.nullWriter());
+            this.dps = dps;
+        }
+
+        @Override
+        public JsonWriter name(String name) {
+            dp = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter value(Boolean value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter value(long value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter value(double value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter value(Number value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter value(String value) {
+            return put(value);
+        }
+
+        @Override
+        public JsonWriter nullValue() {
+            dp = null;
+            return this;
+        }
+
+        private JsonWriter put(Object value) {
+            if (dp != null && value != null) {
+                dps.put(dp, value);
+            }
+            dp = null;
+            return this;
+        }
+    }
+}
@@ -8,17 +8,18 @@
  */
 package org.openhab.binding.tuya.internal.data;
 
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
-import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * Message received from the network.
@@ -27,11 +28,19 @@ import java.nio.charset.StandardCharsets;
  */
 public class Message {
 
+    // Gson instances are thread safe, share one for the discovery datagrams.
+    private static final Gson GSON = new Gson();
+
+    private static final byte[] DPS_KEY = "\"dps\"".getBytes(StandardCharsets.US_ASCII);
+
     private long sequenceNumber;
     private long returnCode;
     private CommandByte commandByte;
     private byte[] data;
 
+    // The decoded text of the data, created on first use.
+    private String text;
+
     public Message(String error) {
         returnCode = 1;
         this.data = error.getBytes(StandardCharsets.UTF_8);
@@ -58,15 +67,18 @@ public class Message {
         return data;
     }
 
+    /**
+     * The data as text, up to the first zero byte. The text is decoded once and cached.
+     *
+     * @return the text.
+     */
     public String getData() {
-
-        // Find the position of the first zero byte
-        int n;
-        for (n = 0; n < data.length && data[n] != 0; n++) {
+        String result = text;
+        if (result == null) {
+            result = new String(data, 0, getTextLength(), StandardCharsets.UTF_8);
+            text = result;
         }
-        String text = new String(data, 0, n, StandardCharsets.UTF_8);
-
-        return text;
+        return result;
     }
 
     /**
@@ -76,7 +88,42 @@ public class Message {
      * @return true if the message contains data.
      */
     public boolean hasData() {
-        return getData() != null && !getData().isEmpty() && getData().startsWith("{");
+        return getTextLength() > 0 && data[0] == '{';
+    }
+
+    /**
+     * Return true if the message contains data with a "dps" member. The raw bytes are inspected, so no text is
+     * decoded. A false result means there are no device properties to parse.
+     *
+     * @return true if the message probably contains dps.
+     */
+    public boolean hasDps() {
+        if (!hasData()) {
+            return false;
+        }
+        int last = getTextLength() - DPS_KEY.length;
+        for (int i = 1; i <= last; i++) {
+            int n = 0;
+            while (n < DPS_KEY.length && data[i + n] == DPS_KEY[n]) {
+                n++;
+            }
+            if (n == DPS_KEY.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the position of the first zero byte, which ends the text.
+     *
+     * @return the length of the text in bytes.
+     */
+    private int getTextLength() {
+        int n;
+        for (n = 0; n < data.length && data[n] != 0; n++) {
+        }
+        return n;
     }
 
     public long getSequenceNumber() {
@@ -97,63 +144,141 @@ public class Message {
      * @return the DeviceDatagram if possible.
      */
     public JsonDiscovery toJsonDiscovery() {
-        Gson gson = new Gson();
-        return gson.fromJson(getData(), JsonDiscovery.class);
+        return GSON.fromJson(getData(), JsonDiscovery.class);
     }
 
     /**
-     * Try to parse the message data to the given class.
+     * Try to parse the message data to the given class. The payload is streamed from the raw bytes until the "dps"
+     * member is found, which is read directly into the target class by its dp codec. Like before, the members of an
+     * object are searched before its nested objects, so a top level "dps" wins over one nested in e.g. "data".
+     * Unrelated members are skipped without building a tree.
      *
      * @param %lt;T&gt; This method converts the data to DeviceState or subclasses thereof, given by the target
      *                  class.
      * @param clazz     the target class.
-     * @return
-     * @return a new instance of clazz filled with the message data.
+     * @return a new instance of clazz filled with the message data, or null if the message is empty.
+     * @throws JsonSyntaxException when the data is not valid json.
      */
     public <T extends DeviceState> T toDeviceState(Class<T> clazz) {
-        Gson gson = new GsonBuilder()
-                .create();
-
-        Map<String, Object> nestedMap = gson.fromJson(getData(), Map.class);
-        Object oDps = findKeyRecursively(nestedMap, "dps");
-        Map<String, Object> state = new HashMap<>();
-        state.put("dps", oDps);
-        JsonElement jsonElement = gson.toJsonTree(state);
-        return gson.fromJson(jsonElement, clazz);
-    }
-
-    public static Object findKeyRecursively(Map<String, Object> map, String keyToFind) {
-        // Check if the map contains the key at the current level
-        if (map.containsKey(keyToFind)) {
-            return map.get(keyToFind);
+        int length = getTextLength();
+        if (length == 0) {
+            return null;
         }
-
-        // Iterate over the entries in the map
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            Object value = entry.getValue();
-
-            // If the value is another map, perform a recursive search
-            if (value instanceof Map) {
-                Object result = findKeyRecursively((Map<String, Object>) value, keyToFind);
-                if (result != null) {
-                    return result; // Return the value if the key is found
+        T state;
+        try {
+            state = clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot instantiate " + clazz.getName(), e);
+        }
+        try (JsonReader reader = findKey(length, "dps", new int[0])) {
+            if (reader != null) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    state.readDps(reader);
+                } else {
+                    reader.skipValue();
                 }
             }
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return state;
+    }
 
-            // If the value is a list, iterate through the list and check for maps
-            if (value instanceof List) {
-                for (Object item : (List<?>) value) {
-                    if (item instanceof Map) {
-                        Object result = findKeyRecursively((Map<String, Object>) item, keyToFind);
-                        if (result != null) {
-                            return result; // Return the value if the key is found
-                        }
+    /**
+     * Find the value of the member with the given name in the object or array at the path. The members of an object
+     * are searched first, then its nested objects and the objects in its arrays, in order. A nested value is searched
+     * by a new reader, so only payloads without a top level member are read more than once.
+     *
+     * @param length    the length of the text in bytes.
+     * @param keyToFind the member name.
+     * @param path      the indexes of the members or elements that lead to the value to search.
+     * @return a reader positioned at the value of the member, or null when the member is absent.
+     * @throws IOException when the data is not valid json.
+     */
+    private JsonReader findKey(int length, String keyToFind, int[] path) throws IOException {
+        JsonReader reader = open(length, path);
+        int[] nested = new int[0];
+        try {
+            int index = 0;
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (keyToFind.equals(reader.nextName())) {
+                        JsonReader result = reader;
+                        reader = null;
+                        return result;
                     }
+                    nested = addIfNested(nested, reader, index++);
+                }
+            } else if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    // Like before, only the objects in an array are searched.
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        nested = addIfNested(nested, reader, index);
+                    } else {
+                        reader.skipValue();
+                    }
+                    index++;
                 }
             }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        for (int child : nested) {
+            int[] childPath = Arrays.copyOf(path, path.length + 1);
+            childPath[path.length] = child;
+            JsonReader result = findKey(length, keyToFind, childPath);
+            if (result != null) {
+                return result;
+            }
         }
-
-        // Return null if the key was not found
         return null;
     }
+
+    /**
+     * Skip the value of the reader, and add its index to the nested indexes when it is an object or an array.
+     */
+    private static int[] addIfNested(int[] nested, JsonReader reader, int index) throws IOException {
+        JsonToken token = reader.peek();
+        reader.skipValue();
+        if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY) {
+            return nested;
+        }
+        int[] result = Arrays.copyOf(nested, nested.length + 1);
+        result[nested.length] = index;
+        return result;
+    }
+
+    /**
+     * Open a reader on the raw bytes, positioned at the value at the path.
+     *
+     * @param length the length of the text in bytes.
+     * @param path   the indexes of the members or elements that lead to the value.
+     * @return the reader.
+     * @throws IOException when the data is not valid json.
+     */
+    private JsonReader open(int length, int[] path) throws IOException {
+        JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(data, 0, length), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        for (int index : path) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                for (int i = 0; i < index; i++) {
+                    reader.nextName();
+                    reader.skipValue();
+                }
+                reader.nextName();
+            } else {
+                reader.beginArray();
+                for (int i = 0; i < index; i++) {
+                    reader.skipValue();
+                }
+            }
+        }
+        return reader;
+    }
 }
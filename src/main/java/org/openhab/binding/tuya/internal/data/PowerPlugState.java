@@ -10,13 +10,16 @@ package org.openhab.binding.tuya.internal.data;
 
 import static org.openhab.binding.tuya.TuyaBindingConstants.CHANNEL_POWER;
 
+import java.io.IOException;
+
 import org.openhab.binding.tuya.internal.annotations.Channel;
 import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
 import org.openhab.binding.tuya.internal.net.QueueItem;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.types.Command;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 // {"devId":"70116356840d8e5f1cb3","dps":{"1":false},"t":1566481749}
 
@@ -66,12 +69,30 @@ public class PowerPlugState extends DeviceState<PowerPlugState.Dps> {
         return !dps.dp1.equals(dpsOther.dp1);
     }
 
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        writeDp(writer, "1", dps.dp1);
+        writeDp(writer, "9", dps.dp9);
+    }
+
+    @Override
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        switch (dp) {
+            case "1":
+                dps.dp1 = nextBoolean(reader);
+                return true;
+            case "9":
+                dps.dp9 = nextInteger(reader);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public class Dps {
 
-        @SerializedName("1")
         private Boolean dp1;
 
-        @SerializedName("9")
         private Integer dp9;
     }
 }
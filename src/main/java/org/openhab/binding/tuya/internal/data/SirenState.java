@@ -10,12 +10,15 @@ package org.openhab.binding.tuya.internal.data;
 
 import static org.openhab.binding.tuya.TuyaBindingConstants.*;
 
+import java.io.IOException;
+
 import org.openhab.binding.tuya.internal.annotations.Channel;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.types.Command;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This is the description of the status of the Filament LED device.
@@ -60,29 +63,50 @@ public class SirenState extends DeviceState<SirenState.Dps> {
         return new DecimalType(dps.dp7);
     }
 
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        writeDp(writer, "13", dps.dp13);
+        writeDp(writer, "7", dps.dp7);
+        writeDp(writer, "5", dps.dp5);
+    }
+
+    @Override
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        switch (dp) {
+            case "13":
+                dps.dp13 = nextBoolean(reader);
+                return true;
+            case "7":
+                dps.dp7 = nextInteger(reader);
+                return true;
+            case "5":
+                dps.dp5 = nextString(reader);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * The device properties. Please note that we use boxed classes here,
      * to allow them to be null. In case of setting properties, null properties
-     * will not be serialized by Gson.
+     * will not be written.
      */
     public class Dps {
 
         /**
          * Alarm on/off.
          */
-        @SerializedName("13")
         private Boolean dp13;
 
         /**
          * Alarm duration 1..30 seconds.
          */
-        @SerializedName("7")
         private Integer dp7;
 
         /**
          * Volume: mute, low, middle, high.
          */
-        @SerializedName("5")
         private String dp5;
     }
 
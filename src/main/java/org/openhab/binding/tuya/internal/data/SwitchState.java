@@ -10,12 +10,15 @@ package org.openhab.binding.tuya.internal.data;
 
 import static org.openhab.binding.tuya.TuyaBindingConstants.CHANNEL_POWER;
 
+import java.io.IOException;
+
 import org.openhab.binding.tuya.internal.annotations.Channel;
 import org.openhab.binding.tuya.internal.net.QueueItem;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.types.Command;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This is the description of the status of the PowerPlug device.
@@ -63,12 +66,27 @@ public class SwitchState extends DeviceState<SwitchState.Dps> {
         return !dps.dp1.equals(dpsOther.dp1);
     }
 
+    @Override
+    protected void writeDps(JsonWriter writer) throws IOException {
+        writeDp(writer, "1", dps.dp1);
+    }
+
+    @Override
+    protected boolean readDp(String dp, JsonReader reader) throws IOException {
+        switch (dp) {
+            case "1":
+                dps.dp1 = nextBoolean(reader);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public class Dps {
 
         /**
          * Switch state on/off.
          */
-        @SerializedName("1")
         private Boolean dp1;
 
     }
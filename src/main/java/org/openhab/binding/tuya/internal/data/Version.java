@@ -1,10 +1,25 @@
 package org.openhab.binding.tuya.internal.data;
 
 public enum Version {
-    V3_3,
-    V3_5,
-    VALL,
-    VUKNOWN;
+    V3_3("3.3"),
+    V3_5("3.5"),
+    VALL(""),
+    VUKNOWN("");
+
+    private final String value;
+
+    Version(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Return the version as used in the configuration and the broadcasts, e.g. "3.3".
+     *
+     * @return the version string, empty when not applicable.
+     */
+    public String getValue() {
+        return value;
+    }
 
     public static Version parse(String value) {
         if (value.equals("3.5")) {
@@ -30,9 +30,20 @@ public class DeviceDescriptor {
     private String devId;
     private String ip;
     private Version version;
+    private String productKey;
     private String localKey;
     private AbstractTuyaHandler handler;
 
+    /**
+     * Liveness derived from the UDP broadcasts: time of the last broadcast, the smoothed interval between broadcasts
+     * (both in milliseconds, 0 when unknown) and whether the device stopped broadcasting.
+     */
+    private volatile long lastSeen;
+    private volatile long broadcastInterval;
+    private volatile boolean expired;
+    // True while the last-seen time is the one from the discovery cache.
+    private volatile boolean restored;
+
     public DeviceDescriptor() {
     }
 
@@ -40,6 +51,35 @@ public class DeviceDescriptor {
         this.devId = jsonDiscovery.getDevId();
         this.ip = jsonDiscovery.getIp();
         this.version = Version.parse(jsonDiscovery.getVersion());
+        this.productKey = jsonDiscovery.getProductKey();
+    }
+
+    /**
+     * Create a descriptor from the persistent discovery cache.
+     *
+     * @param record the persisted record.
+     */
+    public DeviceDescriptor(DiscoveryStore.Record record) {
+        this.devId = record.getDevId();
+        this.ip = record.getIp();
+        this.version = record.getVersion();
+        this.productKey = record.getProductKey();
+        this.lastSeen = record.getLastSeen();
+        this.restored = lastSeen > 0;
+    }
+
+    /**
+     * Copy the liveness of a previous descriptor of the same device.
+     *
+     * @param previous the previous descriptor.
+     * @return this descriptor.
+     */
+    DeviceDescriptor withLivenessOf(DeviceDescriptor previous) {
+        this.lastSeen = previous.lastSeen;
+        this.broadcastInterval = previous.broadcastInterval;
+        this.expired = previous.expired;
+        this.restored = previous.restored;
+        return this;
     }
 
     @Property("id")
@@ -57,6 +97,11 @@ public class DeviceDescriptor {
         return version;
     }
 
+    @Property("productKey")
+    public String getProductKey() {
+        return productKey;
+    }
+
     public String getLocalKey() {
         return localKey;
     }
@@ -73,4 +118,52 @@ public class DeviceDescriptor {
     public void setHandler(AbstractTuyaHandler handler) {
         this.handler = handler;
     }
+
+    /**
+     * Record a broadcast of the device.
+     *
+     * @param now the time of the broadcast in milliseconds.
+     */
+    void seen(long now) {
+        // The time since a restored last-seen time includes the downtime, it is not a broadcast interval.
+        if (lastSeen > 0 && !restored) {
+            long interval = now - lastSeen;
+            broadcastInterval = broadcastInterval == 0 ? interval : (3 * broadcastInterval + interval) / 4;
+        }
+        lastSeen = now;
+        restored = false;
+        expired = false;
+    }
+
+    /**
+     * Return the time the device is considered gone when no other broadcast arrives.
+     *
+     * @param minInterval the minimum broadcast interval to assume.
+     * @param missed the number of broadcasts that may be missed.
+     * @return the deadline in milliseconds.
+     */
+    long getDeadline(long minInterval, int missed) {
+        return lastSeen + Math.max(broadcastInterval, minInterval) * missed;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public long getBroadcastInterval() {
+        return broadcastInterval;
+    }
+
+    /**
+     * Return true when the device used to broadcast, but stopped doing so. This usually means it is powered off.
+     *
+     * @return true when expired.
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    void setExpired(boolean expired) {
+        this.expired = expired;
+    }
 }
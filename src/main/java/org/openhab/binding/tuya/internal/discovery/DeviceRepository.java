@@ -8,17 +8,37 @@
  */
 package org.openhab.binding.tuya.internal.discovery;
 
+import static org.openhab.binding.tuya.TuyaBindingConstants.BINDING_ID;
+
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
+import org.openhab.binding.tuya.handler.AbstractTuyaHandler;
 import org.openhab.binding.tuya.internal.data.Message;
+import org.openhab.binding.tuya.internal.data.Version;
 import org.openhab.binding.tuya.internal.net.DatagramListener;
+import org.openhab.binding.tuya.internal.net.DiscoveryProbe;
+import org.openhab.binding.tuya.internal.net.TrafficCapture;
 import org.openhab.binding.tuya.internal.net.UdpConfig;
 import org.openhab.binding.tuya.internal.util.BufferUtils;
 import org.openhab.binding.tuya.internal.util.MessageParser;
 import org.openhab.binding.tuya.internal.util.SingleEventEmitter;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.thing.ThingTypeUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +50,7 @@ import org.slf4j.LoggerFactory;
 public class DeviceRepository extends SingleEventEmitter<String, DeviceDescriptor, Boolean> implements UdpConfig {
 
     private MessageParser parser;
+    private MessageParser plainParser;
     /**
      * The singleton instance.
      */
@@ -37,13 +58,13 @@ public class DeviceRepository extends SingleEventEmitter<String, DeviceDescripto
 
 
     /**
-     * Listener for UDP packets transmitted to advertise devices.
+     * Listener for UDP packets transmitted to advertise devices, on all discovery ports.
      */
-    private DatagramListener encryptedListener;
+    private DatagramListener listener;
     /**
-     * Listener for UDP packets transmitted to advertise devices.
+     * Active discovery, sending probes from the listener.
      */
-    private DatagramListener unencryptedListener;
+    private DiscoveryProbe probe;
     /**
      * The logger instance.
      */
@@ -52,13 +73,52 @@ public class DeviceRepository extends SingleEventEmitter<String, DeviceDescripto
      * Discovered/registered devices. Key is the device id.
      */
     private final ConcurrentHashMap<String, DeviceDescriptor> devices;
+    /**
+     * Subscribers to discovery events. Key is the device id, a device may have several subscribers.
+     */
+    private final ConcurrentHashMap<String, List<BiFunction<String, DeviceDescriptor, Boolean>>> subscribers;
+    /**
+     * Listeners for new or changed devices, regardless of their id.
+     */
+    private final List<Consumer<DeviceDescriptor>> discoveryListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Thing types of configured things, to infer the type of new devices with the same product. Key is the product
+     * key.
+     */
+    private final ConcurrentHashMap<String, ThingTypeUID> productTypes = new ConcurrentHashMap<>();
+    /**
+     * Datagrams already decoded, to skip decryption of repeated broadcasts.
+     */
+    private final PacketCache packetCache;
+    /**
+     * Liveness deadlines of the broadcasting devices, ordered by time. The map holds the current deadline of each
+     * device, so it can be replaced in O(log n) when a new broadcast arrives. Both are guarded by the index.
+     */
+    private final TreeSet<Deadline> expiryIndex = new TreeSet<>();
+    private final Map<String, Deadline> deadlines = new HashMap<>();
+    /**
+     * Task to flag devices that stopped broadcasting.
+     */
+    private ScheduledFuture<?> livenessTask;
+    /**
+     * The persistent discovery cache, and the task writing it in batches.
+     */
+    private DiscoveryStore store;
+    private ScheduledFuture<?> storeTask;
+    /**
+     * Reinitializes offline handlers outside the UDP receive thread.
+     */
+    private ReinitializationQueue reinitializationQueue;
 
     /**
      * Private constructor. It's a singleton.
      */
     private DeviceRepository() {
         devices = new ConcurrentHashMap<>();
+        subscribers = new ConcurrentHashMap<>();
+        packetCache = new PacketCache(PACKET_CACHE_SIZE);
         parser = new MessageParser();
+        plainParser = new MessageParser().withPlainPayloads();
     }
 
     /**
@@ -76,19 +136,30 @@ public class DeviceRepository extends SingleEventEmitter<String, DeviceDescripto
      * @param scheduler the executer service to use.
      */
     public void start(ScheduledExecutorService scheduler) {
-        if (encryptedListener == null) {
-            encryptedListener = new DatagramListener(DEFAULT_ECRYPTED_UDP_PORT);
-            encryptedListener.on(DatagramListener.Event.UDP_PACKET_RECEIVED, (event, packet) -> {
-                return processPacket(packet);
-            });
-            encryptedListener.start(scheduler);
+        if (store == null) {
+            store = new DiscoveryStore(Paths.get(OpenHAB.getUserDataFolder(), BINDING_ID, DISCOVERY_STORE_FILE),
+                    TimeUnit.MINUTES.toMillis(DISCOVERY_STORE_LAST_SEEN_REFRESH_MINUTES));
+            loadStore();
+            storeTask = scheduler.scheduleWithFixedDelay(store::flush, DISCOVERY_STORE_FLUSH_SECONDS,
+                    DISCOVERY_STORE_FLUSH_SECONDS, TimeUnit.SECONDS);
         }
-        if (unencryptedListener == null) {
-            unencryptedListener = new DatagramListener(DEFAULT_UNECRYPTED_UDP_PORT);
-            unencryptedListener.on(DatagramListener.Event.UDP_PACKET_RECEIVED, (event, packet) -> {
-                return processPacket(packet);
+        if (listener == null) {
+            listener = new DatagramListener(DEFAULT_UNECRYPTED_UDP_PORT, DEFAULT_ECRYPTED_UDP_PORT,
+                    DEFAULT_V3_5_UDP_PORT).withPlainPorts(DEFAULT_UNECRYPTED_UDP_PORT);
+            listener.on(DatagramListener.Event.UDP_PACKET_RECEIVED, (event, packet) -> {
+                return processPacket(packet, false);
+            });
+            listener.on(DatagramListener.Event.UDP_PLAIN_PACKET_RECEIVED, (event, packet) -> {
+                return processPacket(packet, true);
             });
-            encryptedListener.start(scheduler);
+            reinitializationQueue = new ReinitializationQueue(REINIT_QUEUE_SIZE, REINIT_THREADS,
+                    TimeUnit.SECONDS.toMillis(REINIT_MIN_INTERVAL_SECONDS));
+            listener.start(scheduler);
+            probe = new DiscoveryProbe(listener);
+        }
+        if (livenessTask == null) {
+            livenessTask = scheduler.scheduleWithFixedDelay(this::expireDevices, LIVENESS_CHECK_SECONDS,
+                    LIVENESS_CHECK_SECONDS, TimeUnit.SECONDS);
         }
     }
 
@@ -97,46 +168,231 @@ public class DeviceRepository extends SingleEventEmitter<String, DeviceDescripto
      */
     @Override
     public void stop() {
-        if (encryptedListener != null) {
-            encryptedListener.stop();
-            encryptedListener = null;
+        if (probe != null) {
+            probe.stop();
+            probe = null;
+        }
+        if (listener != null) {
+            listener.stop();
+            listener = null;
+            reinitializationQueue.shutdown();
+            reinitializationQueue = null;
+            logger.debug("Discovery packet cache: {} hits, {} misses.", packetCache.getHits(),
+                    packetCache.getMisses());
+        }
+        if (livenessTask != null) {
+            livenessTask.cancel(false);
+            livenessTask = null;
         }
-        if (unencryptedListener != null) {
-            unencryptedListener.stop();
-            unencryptedListener = null;
+        if (store != null) {
+            storeTask.cancel(false);
+            storeTask = null;
+            store.flush();
+            store = null;
+        }
+        packetCache.clear();
+    }
+
+    /**
+     * Add the devices of the persistent discovery cache that are not known yet, so handlers can connect before the
+     * devices broadcast. The broadcasts will confirm or correct them. Devices that were not seen for a long time are
+     * skipped, they were probably removed.
+     */
+    private void loadStore() {
+        int count = 0;
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(DISCOVERY_STORE_MAX_AGE_DAYS);
+        for (DiscoveryStore.Record record : store.load()) {
+            if (record.getLastSeen() > 0 && record.getLastSeen() < oldest) {
+                logger.debug("Device '{}' in the discovery cache was not seen since {}.", record.getDevId(),
+                        record.getLastSeen());
+            } else if (!devices.containsKey(record.getDevId())) {
+                DeviceDescriptor dd = new DeviceDescriptor(record);
+                if (devices.putIfAbsent(dd.getDevId(), dd) == null) {
+                    emit(dd.getDevId(), dd);
+                    deviceDiscovered(dd);
+                    count++;
+                }
+            }
         }
+        logger.debug("Loaded {} devices from the discovery cache.", count);
     }
 
     /**
-     * Process incoming UDP packet.
+     * Ask the devices on the local network to announce themselves, instead of waiting for their periodic broadcast.
+     * The replies are processed as regular broadcasts. Requires the repository to be started.
+     *
+     * @param scheduler the executor service to pace the probes.
+     */
+    public void probe(ScheduledExecutorService scheduler) {
+        DiscoveryProbe current = probe;
+        if (current != null) {
+            current.start(scheduler);
+        }
+    }
+
+    /**
+     * Process incoming UDP packet. Repeated datagrams are taken from the packet cache, without decrypting and parsing
+     * them again.
      *
      * @param packet the packet.
+     * @param plain true when received on the unencrypted port.
      */
-    private boolean processPacket(ByteBuffer packet) {
-        byte[] res = BufferUtils.getBytes(packet);
-        try {
-            Message message = parser.decode(res);
-            JsonDiscovery jd = message.toJsonDiscovery();
-            DeviceDescriptor dd = devices.get(jd.getDevId());
-            if (dd == null) {
-                dd = new DeviceDescriptor(jd);
-                devices.put(jd.getDevId(), dd);
-                emit(jd.getDevId(), dd);
-                logger.info("Add device '{}' with IP address '{}' to the repository", jd.getDevId(), jd.getIp());
-            } else if (dd.getLocalKey() == null) {
-                if (dd.getHandler() != null && !dd.getHandler().isOnline()) {
-                    dd.getHandler().initialize();
+    private boolean processPacket(ByteBuffer packet, boolean plain) {
+        DiscoveryProbe current = probe;
+        if (current != null && current.isProbe(packet.array(), packet.position())) {
+            // Our own probe, received back by broadcast.
+            return true;
+        }
+        JsonDiscovery jd = packetCache.get(packet.array(), packet.position());
+        if (jd == null) {
+            byte[] res = BufferUtils.getBytes(packet);
+            try {
+                Message message = (plain ? plainParser : parser).decode(res);
+                jd = message.toJsonDiscovery();
+                if (jd == null || jd.getDevId() == null || jd.getVersion() == null) {
+                    logger.debug("UDP packet without device id or version dropped: {}", BufferUtils.bytesToHex(res));
+                    return false;
                 }
-                emit(jd.getDevId(), dd);
+                packetCache.put(res, jd);
+            } catch (Exception e) {
+                TrafficCapture.getInstance().record(plain ? TrafficCapture.UDP_PLAIN : TrafficCapture.UDP, null, res,
+                        res.length);
+                logger.error("UDP packet could not be parsed", e);
+                logger.debug(BufferUtils.bytesToHex(res));
+                return false;
             }
-            return true;
+        }
+        TrafficCapture.getInstance().record(plain ? TrafficCapture.UDP_PLAIN : TrafficCapture.UDP, jd.getDevId(),
+                packet.array(), packet.position());
+        try {
+            return processDiscovery(jd);
         } catch (Exception e) {
-            logger.error("UDP packet could not be parsed", e);
-            logger.debug(BufferUtils.bytesToHex(res));
+            logger.error("UDP packet of device '{}' could not be processed", jd.getDevId(), e);
             return false;
         }
     }
 
+    /**
+     * Add or update the device of a valid discovery datagram.
+     *
+     * @param jd the discovery datagram, with a device id and version.
+     */
+    boolean processDiscovery(JsonDiscovery jd) {
+        DeviceDescriptor dd = devices.get(jd.getDevId());
+        if (dd == null) {
+            dd = new DeviceDescriptor(jd);
+            devices.put(jd.getDevId(), dd);
+            updateLiveness(dd);
+            emit(jd.getDevId(), dd);
+            deviceDiscovered(dd);
+            logger.info("Add device '{}' with IP address '{}' to the repository", jd.getDevId(), jd.getIp());
+            return true;
+        }
+        if (dd.isExpired()) {
+            logger.info("Device '{}' is broadcasting again", jd.getDevId());
+        }
+        if ((jd.getIp() != null && !jd.getIp().equals(dd.getIp())) || Version.parse(jd.getVersion()) != dd.getVersion()) {
+            // The device moved, or the cached descriptor is outdated. Replace it, so handlers reconnect.
+            DeviceDescriptor previous = dd;
+            dd = new DeviceDescriptor(jd).withLivenessOf(previous);
+            devices.put(jd.getDevId(), dd);
+            updateLiveness(dd);
+            emit(jd.getDevId(), dd);
+            deviceDiscovered(dd);
+            if (!Objects.equals(dd.getIp(), previous.getIp())) {
+                logger.info("Device '{}' changed IP address from '{}' to '{}'", jd.getDevId(), previous.getIp(),
+                        dd.getIp());
+            }
+            if (dd.getVersion() != previous.getVersion()) {
+                logger.info("Device '{}' changed protocol version from '{}' to '{}'", jd.getDevId(),
+                        previous.getVersion(), dd.getVersion());
+            }
+            return true;
+        }
+        updateLiveness(dd);
+        // A device with a handler has a local key, so the handler is reinitialized regardless of it.
+        AbstractTuyaHandler handler = dd.getHandler();
+        ReinitializationQueue queue = reinitializationQueue;
+        if (handler != null && !handler.isOnline() && queue != null) {
+            queue.submit(jd.getDevId(), handler);
+        }
+        if (dd.getLocalKey() == null) {
+            emit(jd.getDevId(), dd);
+        }
+        return true;
+    }
+
+    /**
+     * Record a broadcast of the device and move its deadline in the expiry index.
+     *
+     * @param dd the device descriptor.
+     */
+    private void updateLiveness(DeviceDescriptor dd) {
+        dd.seen(System.currentTimeMillis());
+        DiscoveryStore current = store;
+        if (current != null) {
+            current.update(dd);
+        }
+        Deadline deadline = new Deadline(dd.getDeadline(LIVENESS_MIN_INTERVAL_MILLIS, LIVENESS_MISSED_BROADCASTS),
+                dd.getDevId());
+        synchronized (expiryIndex) {
+            Deadline previous = deadlines.put(dd.getDevId(), deadline);
+            if (previous != null) {
+                expiryIndex.remove(previous);
+            }
+            expiryIndex.add(deadline);
+        }
+    }
+
+    /**
+     * Flag the devices whose deadline passed. Only the expired head of the index is visited.
+     */
+    private void expireDevices() {
+        long now = System.currentTimeMillis();
+        synchronized (expiryIndex) {
+            while (!expiryIndex.isEmpty() && expiryIndex.first().time <= now) {
+                Deadline deadline = expiryIndex.pollFirst();
+                deadlines.remove(deadline.devId);
+                DeviceDescriptor dd = devices.get(deadline.devId);
+                if (dd != null) {
+                    dd.setExpired(true);
+                    logger.info("Device '{}' stopped broadcasting", deadline.devId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return true when the device used to broadcast, but did not for a number of broadcast intervals. Devices that
+     * never broadcast are not expired, since nothing is known about them.
+     *
+     * @param devId the device id.
+     * @return true when the device is probably powered off.
+     */
+    public boolean isExpired(String devId) {
+        DeviceDescriptor dd = devices.get(devId);
+        return dd != null && dd.isExpired();
+    }
+
+    /**
+     * Return the packet cache, e.g. to inspect its hit ratio.
+     *
+     * @return the packet cache.
+     */
+    public PacketCache getPacketCache() {
+        return packetCache;
+    }
+
+    /**
+     * Replace the queue that reinitializes offline handlers. The queue is created when the repository is started, this
+     * method allows to replace it, e.g. in tests.
+     *
+     * @param queue the queue, or null to not reinitialize handlers.
+     */
+    void setReinitializationQueue(ReinitializationQueue queue) {
+        reinitializationQueue = queue;
+    }
+
     /**
      * Return the device descriptor of the given gwId. Usually the gwId is the same as the devId for standalone devices.
      *
@@ -148,12 +404,157 @@ public class DeviceRepository extends SingleEventEmitter<String, DeviceDescripto
     }
 
     /**
-     * When a new handler is added, emit all the already discovered devices.
+     * Return all known devices.
+     *
+     * @return the device descriptors.
+     */
+    public Collection<DeviceDescriptor> getDevices() {
+        return Collections.unmodifiableCollection(devices.values());
+    }
+
+    /**
+     * Add a listener that is called when a device is added to the repository, or when its ip-address or version
+     * changes. Repeated broadcasts are not reported.
+     *
+     * @param listener the listener.
+     */
+    public void addDiscoveryListener(Consumer<DeviceDescriptor> listener) {
+        discoveryListeners.add(listener);
+    }
+
+    public void removeDiscoveryListener(Consumer<DeviceDescriptor> listener) {
+        discoveryListeners.remove(listener);
+    }
+
+    private void deviceDiscovered(DeviceDescriptor dd) {
+        for (Consumer<DeviceDescriptor> listener : discoveryListeners) {
+            try {
+                listener.accept(dd);
+            } catch (RuntimeException e) {
+                logger.warn("Discovery of device '{}' could not be handled: {}", dd.getDevId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Remember the thing type of a configured device, so other devices of the same product are discovered with that
+     * type.
+     *
+     * @param productKey the product key, may be null.
+     * @param thingTypeUID the thing type.
+     */
+    public void registerProductType(String productKey, ThingTypeUID thingTypeUID) {
+        if (productKey != null && !productKey.isEmpty()) {
+            productTypes.put(productKey, thingTypeUID);
+        }
+    }
+
+    /**
+     * Return the thing type of the product, if a device of the same product is configured.
+     *
+     * @param productKey the product key, may be null.
+     * @return the thing type, or null if unknown.
+     */
+    public ThingTypeUID getProductType(String productKey) {
+        return productKey == null ? null : productTypes.get(productKey);
+    }
+
+    /**
+     * Subscribe to the discovery events of a single device. Unlike other event emitters, a device may have several
+     * subscribers.
+     *
+     * @param devId the device id.
+     * @param callback the callback, called with the device descriptor.
+     * @return this repository.
+     */
+    @Override
+    public DeviceRepository on(String devId, BiFunction<String, DeviceDescriptor, Boolean> callback) {
+        if (devId != null) {
+            subscribers.computeIfAbsent(devId, k -> new CopyOnWriteArrayList<>()).add(callback);
+            handlerAdded(devId, callback);
+        }
+        return this;
+    }
+
+    /**
+     * Remove a single subscriber of the device.
+     *
+     * @param devId the device id.
+     * @param callback the callback given when subscribing.
+     * @return this repository.
+     */
+    public DeviceRepository removeHandler(String devId, BiFunction<String, DeviceDescriptor, Boolean> callback) {
+        subscribers.computeIfPresent(devId, (k, list) -> {
+            list.remove(callback);
+            return list.isEmpty() ? null : list;
+        });
+        return this;
+    }
+
+    @Override
+    public DeviceRepository removeHandler(String devId) {
+        subscribers.remove(devId);
+        return this;
+    }
+
+    @Override
+    public DeviceRepository removeAllHandlers() {
+        subscribers.clear();
+        return this;
+    }
+
+    /**
+     * Deliver the device descriptor to the subscribers of the device only.
+     *
+     * @param devId the device id.
+     * @param device the device descriptor.
+     * @return the result of the first subscriber, or null if there are none.
+     */
+    @Override
+    public Boolean emit(String devId, DeviceDescriptor device) {
+        List<BiFunction<String, DeviceDescriptor, Boolean>> list = subscribers.get(devId);
+        Boolean result = null;
+        if (list != null) {
+            for (BiFunction<String, DeviceDescriptor, Boolean> callback : list) {
+                try {
+                    Boolean value = callback.apply(devId, device);
+                    result = result == null ? value : result;
+                } catch (RuntimeException e) {
+                    logger.warn("Device '{}' could not be handled: {}", devId, e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * When a new handler is added, emit the device it subscribed to if it is already discovered.
      */
     @Override
     protected void handlerAdded(String gwId, BiFunction<String, DeviceDescriptor, Boolean> eventCallback) {
-        devices.forEach((key, descriptor) -> {
+        DeviceDescriptor descriptor = devices.get(gwId);
+        if (descriptor != null) {
             eventCallback.apply(gwId, descriptor);
-        });
+        }
+    }
+
+    /**
+     * Entry in the expiry index.
+     */
+    private static class Deadline implements Comparable<Deadline> {
+
+        private final long time;
+        private final String devId;
+
+        Deadline(long time, String devId) {
+            this.time = time;
+            this.devId = devId;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : devId.compareTo(other.devId);
+        }
     }
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.discovery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.openhab.binding.tuya.internal.data.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of discovered devices, so a restart can connect to the known ip-addresses without waiting for the
+ * broadcasts. Records are appended to a text file, one line per change, and the last line of a device wins. Changes are
+ * collected and written in batches, so a burst of broadcasts causes a single write. The file is compacted when it
+ * holds too many outdated lines.
+ *
+ * @author Wim Vissers.
+ */
+public class DiscoveryStore {
+
+    private static final String SEPARATOR = "\t";
+
+    private final Logger logger = LoggerFactory.getLogger(DiscoveryStore.class);
+
+    private final Path file;
+    private final long lastSeenRefreshMillis;
+
+    // The records as they are in the file, and the records waiting to be written. Key is the device id.
+    private final Map<String, Record> persisted = new LinkedHashMap<>();
+    private final Map<String, Record> pending = new LinkedHashMap<>();
+    private int lines;
+
+    /**
+     * Create a store.
+     *
+     * @param file the file to use.
+     * @param lastSeenRefreshMillis the age of the persisted last-seen time after which it is written again.
+     */
+    public DiscoveryStore(Path file, long lastSeenRefreshMillis) {
+        this.file = file;
+        this.lastSeenRefreshMillis = lastSeenRefreshMillis;
+    }
+
+    /**
+     * Read the records from the file.
+     *
+     * @return the records, one for each device.
+     */
+    public synchronized Collection<Record> load() {
+        persisted.clear();
+        lines = 0;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    Record record = Record.parse(line);
+                    if (record != null) {
+                        persisted.put(record.devId, record);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read the discovery cache {}: {}", file, e.getMessage());
+            }
+        }
+        return new ArrayList<>(persisted.values());
+    }
+
+    /**
+     * Record the current state of the device. It is written on the next flush if it changed, or if the persisted
+     * last-seen time is outdated.
+     *
+     * @param dd the device descriptor.
+     */
+    public synchronized void update(DeviceDescriptor dd) {
+        Record record = new Record(dd.getDevId(), dd.getIp(), dd.getVersion(), dd.getProductKey(), dd.getLastSeen());
+        Record current = persisted.get(record.devId);
+        if (current == null || !current.sameDevice(record)
+                || record.lastSeen - current.lastSeen >= lastSeenRefreshMillis) {
+            pending.put(record.devId, record);
+        }
+    }
+
+    /**
+     * Write the pending records with a single write and sync.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        persisted.putAll(pending);
+        try {
+            Files.createDirectories(file.getParent());
+            if (lines + pending.size() > 2 * persisted.size() + 100) {
+                compact();
+            } else {
+                write(file, pending.values(), true);
+                lines += pending.size();
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot write the discovery cache {}: {}", file, e.getMessage());
+        }
+        pending.clear();
+    }
+
+    /**
+     * Rewrite the file with only the current records.
+     */
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        write(tmp, persisted.values(), false);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lines = persisted.size();
+    }
+
+    private static void write(Path path, Collection<Record> records, boolean append) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (Record record : records) {
+            record.append(b);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(b.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * A persisted device.
+     */
+    public static class Record {
+
+        private final String devId;
+        private final String ip;
+        private final Version version;
+        private final String productKey;
+        private final long lastSeen;
+
+        Record(String devId, String ip, Version version, String productKey, long lastSeen) {
+            this.devId = devId;
+            this.ip = ip;
+            this.version = version;
+            this.productKey = productKey;
+            this.lastSeen = lastSeen;
+        }
+
+        public String getDevId() {
+            return devId;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public Version getVersion() {
+            return version;
+        }
+
+        public String getProductKey() {
+            return productKey;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        private boolean sameDevice(Record other) {
+            return Objects.equals(ip, other.ip) && version == other.version
+                    && Objects.equals(productKey, other.productKey);
+        }
+
+        private void append(StringBuilder b) {
+            b.append(devId).append(SEPARATOR).append(ip).append(SEPARATOR).append(version.name()).append(SEPARATOR)
+                    .append(productKey == null ? "" : productKey).append(SEPARATOR).append(lastSeen).append('\n');
+        }
+
+        /**
+         * Parse a line of the file.
+         *
+         * @param line the line.
+         * @return the record, or null if the line is invalid.
+         */
+        private static Record parse(String line) {
+            String[] fields = line.split(SEPARATOR, -1);
+            if (fields.length != 5 || fields[0].isEmpty() || fields[1].isEmpty()) {
+                return null;
+            }
+            try {
+                return new Record(fields[0], fields[1], Version.valueOf(fields[2]),
+                        fields[3].isEmpty() ? null : fields[3], Long.parseLong(fields[4]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
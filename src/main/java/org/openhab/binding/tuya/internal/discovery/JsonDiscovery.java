@@ -47,4 +47,8 @@ public class JsonDiscovery {
     public String getIp() {
         return ip;
     }
+
+    public String getProductKey() {
+        return productKey;
+    }
 }
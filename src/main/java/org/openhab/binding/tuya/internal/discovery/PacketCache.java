@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.discovery;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the discovery datagrams already decoded. Devices repeat the same encrypted datagram every few
+ * seconds, so a byte-identical repeat can reuse the decoded JsonDiscovery instead of being decrypted and parsed again.
+ * The least recently seen datagrams are evicted when the cache is full.
+ *
+ * @author Wim Vissers.
+ */
+public class PacketCache {
+
+    private final Map<Long, Entry> entries;
+    private long hits;
+    private long misses;
+
+    public PacketCache(int capacity) {
+        entries = new LinkedHashMap<Long, Entry>(capacity * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the decoded datagram for the given raw bytes, or null if the bytes were not seen before.
+     *
+     * @param data the array holding the datagram.
+     * @param length the length of the datagram.
+     * @return the cached discovery, or null.
+     */
+    public synchronized JsonDiscovery get(byte[] data, int length) {
+        Entry entry = entries.get(hash(data, length));
+        if (entry != null && Arrays.equals(entry.data, 0, entry.data.length, data, 0, length)) {
+            hits++;
+            return entry.discovery;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Store the decoded datagram for the given raw bytes.
+     *
+     * @param data the datagram, the array is kept as is.
+     * @param discovery the decoded datagram.
+     */
+    public synchronized void put(byte[] data, JsonDiscovery discovery) {
+        entries.put(hash(data, data.length), new Entry(data, discovery));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Return the fraction of lookups that were answered from the cache.
+     *
+     * @return the hit ratio, 0..1.
+     */
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the bytes.
+     */
+    private static long hash(byte[] data, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static class Entry {
+
+        private final byte[] data;
+        private final JsonDiscovery discovery;
+
+        Entry(byte[] data, JsonDiscovery discovery) {
+            this.data = data;
+            this.discovery = discovery;
+        }
+    }
+}
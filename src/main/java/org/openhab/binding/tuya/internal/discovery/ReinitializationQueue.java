@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.discovery;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.tuya.handler.AbstractTuyaHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reinitializes offline handlers when their device broadcasts, outside the UDP receive thread. Requests are coalesced
+ * per device: a device that is already waiting is not queued again, and a device is not reinitialized more than once
+ * per interval. The queue is bounded, so a burst of broadcasts after a power cut cannot pile up work, and a small pool
+ * recovers the devices in parallel.
+ *
+ * @author Wim Vissers.
+ */
+public class ReinitializationQueue {
+
+    private final Logger logger = LoggerFactory.getLogger(ReinitializationQueue.class);
+
+    private final ThreadPoolExecutor executor;
+    private final long minIntervalMillis;
+
+    // Devices waiting in the queue, and the time of the last reinitialization. Key is the device id.
+    private final ConcurrentHashMap<String, Boolean> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastRun = new ConcurrentHashMap<>();
+
+    /**
+     * Create a queue.
+     *
+     * @param capacity the maximum number of waiting devices.
+     * @param threads the number of devices reinitialized in parallel.
+     * @param minIntervalMillis the minimum time between two reinitializations of the same device.
+     */
+    public ReinitializationQueue(int capacity, int threads, long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(capacity));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Request the handler of the device to be reinitialized.
+     *
+     * @param devId the device id.
+     * @param handler the handler.
+     * @return true when queued, false when coalesced, rate limited or the queue is full.
+     */
+    public boolean submit(String devId, AbstractTuyaHandler handler) {
+        Long last = lastRun.get(devId);
+        if (last != null && System.currentTimeMillis() - last < minIntervalMillis) {
+            return false;
+        }
+        if (pending.putIfAbsent(devId, Boolean.TRUE) != null) {
+            return false;
+        }
+        try {
+            executor.execute(() -> reinitialize(devId, handler));
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.remove(devId);
+            logger.debug("Reinitialization queue full, skipping device '{}'.", devId);
+            return false;
+        }
+    }
+
+    private void reinitialize(String devId, AbstractTuyaHandler handler) {
+        pending.remove(devId);
+        lastRun.put(devId, System.currentTimeMillis());
+        try {
+            // The handler may have connected while waiting.
+            if (!handler.isOnline()) {
+                logger.debug("Reinitialize handler of device '{}'.", devId);
+                handler.initialize();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Device '{}' could not be reinitialized: {}", devId, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the executor. Waiting requests are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+}
@@ -8,14 +8,29 @@
  */
 package org.openhab.binding.tuya.internal.discovery;
 
+import static org.openhab.binding.tuya.TuyaBindingConstants.*;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import org.openhab.binding.tuya.internal.net.TrafficCapture;
 import org.openhab.binding.tuya.internal.net.TuyaClientService;
+import org.openhab.binding.tuya.internal.net.UdpConfig;
 import org.openhab.core.config.discovery.AbstractDiscoveryService;
+import org.openhab.core.config.discovery.DiscoveryResultBuilder;
 import org.openhab.core.config.discovery.DiscoveryService;
 import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.thing.ThingUID;
 import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,18 +38,27 @@ import org.slf4j.LoggerFactory;
 /**
  * The TuyaDiscoveryService is responsible for auto detecting Tuya broadcasts on
  * the local network. It builds a repository of devices for use by the various Tuya devices.
+ * New devices are published to the inbox. Discoveries are collected and published in a single batch once the
+ * broadcasts calm down, so a network full of devices does not flood the inbox with updates.
  *
  * @author Wim Vissers - Initial contribution
  */
 @Component(service = DiscoveryService.class)
-public class TuyaDiscoveryService extends AbstractDiscoveryService {
+public class TuyaDiscoveryService extends AbstractDiscoveryService implements UdpConfig {
 
     private static Set<ThingTypeUID> supportedThingsTypes;
     private Logger logger = LoggerFactory.getLogger(TuyaDiscoveryService.class);
 
+    // Devices waiting to be published, and the device as last published. Key is the device id.
+    private final Map<String, DeviceDescriptor> pending = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, DeviceDescriptor> published = new ConcurrentHashMap<>();
+    private final Consumer<DeviceDescriptor> discoveryListener = this::deviceDiscovered;
+    private ScheduledFuture<?> publishTask;
+
     public static Set<ThingTypeUID> getSupportedTypes() {
         if (supportedThingsTypes == null) {
-            supportedThingsTypes = new HashSet<>();
+            supportedThingsTypes = new HashSet<>(Arrays.asList(THING_TYPE_POWER_PLUG, THING_TYPE_COLOR_LED,
+                    THING_TYPE_FILAMENT_LED, THING_TYPE_SIREN, THING_TYPE_CURTAIN_SWITCH, THING_TYPE_SWITCH));
         }
         return supportedThingsTypes;
     }
@@ -58,7 +82,10 @@ public class TuyaDiscoveryService extends AbstractDiscoveryService {
 
     @Override
     protected void startBackgroundDiscovery() {
+        DeviceRepository.getInstance().addDiscoveryListener(discoveryListener);
         DeviceRepository.getInstance().start(scheduler);
+        // Probe at startup, so things without an ip-address can connect without waiting for a broadcast.
+        DeviceRepository.getInstance().probe(scheduler);
         try {
             TuyaClientService.getInstance().start();
         } catch (IOException e) {
@@ -67,13 +94,27 @@ public class TuyaDiscoveryService extends AbstractDiscoveryService {
 
     @Override
     protected void stopBackgroundDiscovery() {
+        DeviceRepository.getInstance().removeDiscoveryListener(discoveryListener);
         DeviceRepository.getInstance().stop();
         TuyaClientService.getInstance().stop();
+        TrafficCapture.getInstance().stop();
+        synchronized (pending) {
+            if (publishTask != null) {
+                publishTask.cancel(false);
+                publishTask = null;
+            }
+            pending.clear();
+        }
+        published.clear();
     }
 
     @Override
     protected void startScan() {
         logger.debug("Starting device search...");
+        // Publish the known devices again, so they survive the removal of results older than this scan.
+        published.clear();
+        DeviceRepository.getInstance().getDevices().forEach(this::deviceDiscovered);
+        DeviceRepository.getInstance().probe(scheduler);
     }
 
     @Override
@@ -81,4 +122,57 @@ public class TuyaDiscoveryService extends AbstractDiscoveryService {
         removeOlderResults(getTimestampOfLastScan());
         super.stopScan();
     }
+
+    /**
+     * Queue a new or changed device for publishing. Devices that are already configured, or published with the same
+     * address, are skipped.
+     *
+     * @param dd the device descriptor.
+     */
+    private void deviceDiscovered(DeviceDescriptor dd) {
+        if (dd.getHandler() != null || dd.getLocalKey() != null) {
+            return;
+        }
+        DeviceDescriptor previous = published.get(dd.getDevId());
+        if (previous != null && previous.getIp().equals(dd.getIp()) && previous.getVersion() == dd.getVersion()) {
+            return;
+        }
+        synchronized (pending) {
+            pending.put(dd.getDevId(), dd);
+            // Restart the delay on every discovery, so a burst is published at once.
+            if (publishTask != null) {
+                publishTask.cancel(false);
+            }
+            publishTask = scheduler.schedule(this::publish, DISCOVERY_PUBLISH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publish the pending devices to the inbox.
+     */
+    private void publish() {
+        List<DeviceDescriptor> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            publishTask = null;
+        }
+        for (DeviceDescriptor dd : batch) {
+            ThingTypeUID thingTypeUID = DeviceRepository.getInstance().getProductType(dd.getProductKey());
+            if (thingTypeUID == null) {
+                // The data points are only readable with the local key, so the generic switch is the best guess.
+                thingTypeUID = THING_TYPE_SWITCH;
+            }
+            DiscoveryResultBuilder builder = DiscoveryResultBuilder.create(new ThingUID(thingTypeUID, dd.getDevId()))
+                    .withProperty("id", dd.getDevId()).withProperty("version", dd.getVersion().getValue())
+                    .withProperty("ip", dd.getIp()).withRepresentationProperty("id")
+                    .withLabel("Tuya device " + dd.getDevId());
+            if (dd.getProductKey() != null) {
+                builder.withProperty("productKey", dd.getProductKey());
+            }
+            thingDiscovered(builder.build());
+            published.put(dd.getDevId(), dd);
+        }
+        logger.debug("Published {} discovered devices.", batch.size());
+    }
 }
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encryption or decryption of a payload.
+ *
+ * @author Wim Vissers.
+ */
+@Name("org.openhab.binding.tuya.Cipher")
+@Label("Tuya Cipher")
+public class CipherEvent extends TuyaEvent {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Size")
+    @DataAmount
+    public int size;
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encoding or decoding of a single frame.
+ *
+ * @author Wim Vissers.
+ */
+@Name("org.openhab.binding.tuya.Frame")
+@Label("Tuya Frame")
+public class FrameEvent extends TuyaEvent {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Protocol Version")
+    public String version;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Size")
+    @DataAmount
+    public int size;
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A decision of the send queue of a client: a message that is queued, replaces conflicting messages, or is dropped.
+ *
+ * @author Wim Vissers.
+ */
+@Name("org.openhab.binding.tuya.Queue")
+@Label("Tuya Send Queue")
+public class QueueEvent extends TuyaEvent {
+
+    @Label("Command")
+    public String command;
+
+    @Label("Decision")
+    public String decision;
+
+    @Label("Replaced Messages")
+    public int replaced;
+
+    @Label("Queue Depth")
+    public int depth;
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Negotiation of the session key of a protocol 3.5 connection.
+ *
+ * @author Wim Vissers.
+ */
+@Name("org.openhab.binding.tuya.SessionKey")
+@Label("Tuya Session Key Negotiation")
+public class SessionKeyEvent extends TuyaEvent {
+
+    @Label("Success")
+    public boolean success;
+}
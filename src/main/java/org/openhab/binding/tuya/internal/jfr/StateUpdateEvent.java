@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Fan-out of a status message to the channels of a thing.
+ *
+ * @author Wim Vissers.
+ */
+@Name("org.openhab.binding.tuya.StateUpdate")
+@Label("Tuya State Update")
+public class StateUpdateEvent extends TuyaEvent {
+
+    @Label("Updated Channels")
+    public int updated;
+
+    @Label("Suppressed Channels")
+    public int suppressed;
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class of the Java Flight Recorder events of the binding. The events are disabled by default, so they cost
+ * next to nothing until they are enabled in a recording, e.g. with a .jfc file that enables "org.openhab.binding.tuya.*".
+ * Every event carries the id of the device it applies to.
+ *
+ * @author Wim Vissers.
+ */
+@Category({ "openHAB", "Tuya" })
+@Enabled(false)
+@StackTrace(false)
+public abstract class TuyaEvent extends Event {
+
+    @Label("Device Id")
+    public String devId;
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+
+import org.openhab.binding.tuya.internal.util.LatencyHistogram;
+
+/**
+ * Transport metrics of a single device, and of the whole fleet. Everything recorded for a device is recorded for the
+ * fleet as well. The metrics of a device survive the replacement of its client, e.g. when its ip-address changes.
+ *
+ * @author Wim Vissers.
+ */
+public class ClientMetrics {
+
+    /**
+     * The counted events.
+     */
+    public enum Counter {
+        MESSAGES_SENT,
+        MESSAGES_RECEIVED,
+        BYTES_SENT,
+        BYTES_RECEIVED,
+        RECONNECTS,
+        CONNECT_ERRORS,
+        READ_ERRORS,
+        DECODE_ERRORS,
+        DROPPED_MESSAGES;
+    }
+
+    /**
+     * The measured latencies.
+     */
+    public enum Latency {
+        // From queueing a command until the device accepted it.
+        COMMAND_ACK,
+        // From the last write of a heartbeat until its response.
+        HEARTBEAT_RTT,
+        // From starting to connect until connected, including the session key negotiation.
+        HANDSHAKE,
+        // From queueing a message until it is written.
+        QUEUE_WAIT;
+    }
+
+    private static final ClientMetrics FLEET = new ClientMetrics(null);
+    private static final ConcurrentHashMap<String, ClientMetrics> DEVICES = new ConcurrentHashMap<>();
+
+    private final ClientMetrics fleet;
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Latency.values().length];
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    private ClientMetrics(ClientMetrics fleet) {
+        this.fleet = fleet;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Return the metrics of the device.
+     *
+     * @param devId the device id.
+     * @return the metrics.
+     */
+    public static ClientMetrics of(String devId) {
+        return DEVICES.computeIfAbsent(devId, id -> new ClientMetrics(FLEET));
+    }
+
+    /**
+     * Return the metrics of all devices together.
+     *
+     * @return the metrics.
+     */
+    public static ClientMetrics fleet() {
+        return FLEET;
+    }
+
+    /**
+     * Return the metrics of all devices.
+     *
+     * @return the metrics, key is the device id.
+     */
+    public static Map<String, ClientMetrics> devices() {
+        return Collections.unmodifiableMap(DEVICES);
+    }
+
+    public void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+        if (fleet != null) {
+            fleet.add(counter, delta);
+        }
+    }
+
+    public void record(Latency latency, long nanos) {
+        latencies[latency.ordinal()].record(nanos);
+        if (fleet != null) {
+            fleet.record(latency, nanos);
+        }
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public LatencyHistogram get(Latency latency) {
+        return latencies[latency.ordinal()];
+    }
+
+    void setQueueDepth(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Return the number of messages waiting to be sent. For the fleet this is always 0.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * Return a multi-line report of all metrics.
+     *
+     * @return the report.
+     */
+    public String report() {
+        StringBuilder b = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            b.append(String.format("%-18s %d%n", counter.name().toLowerCase(), get(counter)));
+        }
+        if (fleet != null) {
+            b.append(String.format("%-18s %d%n", "queue_depth", getQueueDepth()));
+        }
+        for (Latency latency : Latency.values()) {
+            b.append(String.format("%-18s %s%n", latency.name().toLowerCase(), get(latency)));
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for connecting clients. At startup all things initialize at the same moment, and connecting to
+ * all devices at once (including the 3.5 session key negotiation) overloads both the host and the network. This
+ * singleton lets a limited number of clients connect in parallel, and admits the waiting clients by priority. A client
+ * leaves the connecting state when it is online, when the connection failed, or after a timeout.
+ *
+ * @author Wim Vissers.
+ */
+public class ConnectionScheduler implements TcpConfig {
+
+    // Priorities, a higher value connects first.
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    // Create and store the singleton implementation.
+    private static final ConnectionScheduler INSTANCE = new ConnectionScheduler();
+
+    private final Logger logger = LoggerFactory.getLogger(ConnectionScheduler.class);
+
+    private final PriorityQueue<Admission> waiting = new PriorityQueue<>();
+    private final Map<TuyaClient, Admission> connecting = new HashMap<>();
+    private int concurrency = DEFAULT_CONNECT_CONCURRENCY;
+    private long sequence;
+
+    // Time from submit until online, in milliseconds, since the scheduler was last idle.
+    private final long[] timesToOnline = new long[CONNECT_STATISTICS_SIZE];
+    private int samples;
+
+    /**
+     * Private constructor to ensure singleton.
+     */
+    private ConnectionScheduler() {
+    }
+
+    /**
+     * Get the singleton instance.
+     *
+     * @return the instance.
+     */
+    public static ConnectionScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the number of clients that may connect in parallel.
+     *
+     * @param concurrency the number of clients, at least 1.
+     */
+    public void setConcurrency(int concurrency) {
+        synchronized (this) {
+            this.concurrency = Math.max(1, concurrency);
+        }
+        admit();
+    }
+
+    /**
+     * Queue the client for connecting. It is started as soon as there is room. Nothing happens if the client is
+     * already queued.
+     *
+     * @param client the client.
+     * @param priority the priority, a higher value connects first.
+     * @param scheduler the scheduler to start the client with.
+     */
+    public void submit(TuyaClient client, int priority, ScheduledExecutorService scheduler) {
+        synchronized (this) {
+            // A client that is already waiting or connecting is not queued twice.
+            if (connecting.containsKey(client) || waiting.stream().anyMatch(admission -> admission.client == client)) {
+                return;
+            }
+            waiting.add(new Admission(client, priority, sequence++, scheduler));
+        }
+        admit();
+    }
+
+    /**
+     * Called when the client is connected or gave up connecting, to admit the next client.
+     *
+     * @param client the client.
+     * @param online true when the client is online.
+     */
+    public void release(TuyaClient client, boolean online) {
+        synchronized (this) {
+            Admission admission = connecting.remove(client);
+            if (admission == null) {
+                return;
+            }
+            if (admission.timeout != null) {
+                admission.timeout.cancel(false);
+            }
+            if (online && samples < timesToOnline.length) {
+                timesToOnline[samples++] = System.currentTimeMillis() - admission.submitted;
+            }
+            if (waiting.isEmpty() && connecting.isEmpty() && samples > 0) {
+                logStatistics();
+            }
+        }
+        admit();
+    }
+
+    /**
+     * Remove the client, e.g. when it is stopped before it connected.
+     *
+     * @param client the client.
+     */
+    public void cancel(TuyaClient client) {
+        synchronized (this) {
+            waiting.removeIf(admission -> admission.client == client);
+        }
+        release(client, false);
+    }
+
+    /**
+     * Start waiting clients while there is room.
+     */
+    private void admit() {
+        List<Admission> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (connecting.size() < concurrency && !waiting.isEmpty()) {
+                Admission admission = waiting.poll();
+                connecting.put(admission.client, admission);
+                admitted.add(admission);
+            }
+        }
+        for (Admission admission : admitted) {
+            admission.timeout = admission.scheduler.schedule(() -> release(admission.client, false),
+                    CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            admission.scheduler.execute(() -> admission.client.start(admission.scheduler));
+        }
+    }
+
+    private void logStatistics() {
+        if (logger.isDebugEnabled()) {
+            long[] sorted = Arrays.copyOf(timesToOnline, samples);
+            Arrays.sort(sorted);
+            logger.debug("{} devices online, time to online p50 {} ms, p90 {} ms, p99 {} ms, max {} ms.", samples,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[samples - 1]);
+        }
+        samples = 0;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    /**
+     * A client waiting to connect, ordered by priority and then by arrival.
+     */
+    private static class Admission implements Comparable<Admission> {
+
+        private final TuyaClient client;
+        private final int priority;
+        private final long sequence;
+        private final ScheduledExecutorService scheduler;
+        private final long submitted = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> timeout;
+
+        Admission(TuyaClient client, int priority, long sequence, ScheduledExecutorService scheduler) {
+            this.client = client;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public int compareTo(Admission other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -8,11 +8,20 @@
  */
 package org.openhab.binding.tuya.internal.net;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.SocketTimeoutException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -21,7 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Listener for UDP messages on the specified port.
+ * Listener for UDP messages on the specified ports. All ports are serviced by non-blocking channels on a single
+ * selector, so only one thread is used regardless of the number of ports.
  *
  * @author Wim Vissers.
  */
@@ -29,59 +39,137 @@ public class DatagramListener extends SingleEventEmitter<DatagramListener.Event,
         implements UdpConfig {
 
     private Future<?> task;
-    private int port;
+    private final int[] ports;
+    // The ports of which the datagrams are emitted as UDP_PLAIN_PACKET_RECEIVED.
+    private final Set<Integer> plainPorts = new HashSet<>();
     private final Logger logger;
-    private boolean running;
+    private volatile boolean running;
+    private Selector selector;
+    // The open channels. Key is the port.
+    private final Map<Integer, DatagramChannel> channels = new ConcurrentHashMap<>();
 
-    public DatagramListener(int port) {
+    public DatagramListener(int... ports) {
         logger = LoggerFactory.getLogger(this.getClass());
-        this.port = port;
+        this.ports = ports;
+    }
+
+    /**
+     * Mark ports that receive unencrypted datagrams. Their datagrams are emitted as UDP_PLAIN_PACKET_RECEIVED.
+     *
+     * @param ports the ports.
+     * @return this listener.
+     */
+    public DatagramListener withPlainPorts(int... ports) {
+        for (int port : ports) {
+            plainPorts.add(port);
+        }
+        return this;
     }
 
     /**
      * Main loop.
      */
-    public void start(ScheduledExecutorService scheduler) {
+    public synchronized void start(ScheduledExecutorService scheduler) {
         if (task == null) {
-            Runnable runnable = new Runnable() {
-                @Override
-                public void run() {
-                    running = true;
-                    DatagramChannel channel = null;
-                    ByteBuffer buf = ByteBuffer.allocate(UDP_SOCKET_BUFFER_SIZE);
-                    while (running) {
-                        try {
-                             while (running) {
-                                if (channel == null) {
-                                    channel = DatagramChannel.open();
-                                    channel.socket().bind(new InetSocketAddress(port));
-                                }
-                                buf.clear();
-                                channel.receive(buf);
-                                emit(Event.UDP_PACKET_RECEIVED, buf);
-                            }
-                        } catch (SocketTimeoutException ignored) {
-                        } catch (IOException ex1) {
-                            logger.error("DatagramEventEmitter", ex1);
-                        } finally {
-                            if (channel != null) {
-                                try {
-                                    channel.close();
-                                    channel = null;
-                                } catch (IOException e) {
-                                }
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                logger.error("Cannot open selector for UDP listener", e);
+                return;
+            }
+            for (int port : ports) {
+                open(port);
+            }
+            running = true;
+            task = scheduler.submit(this::run);
+        }
+    }
+
+    /**
+     * Open a non-blocking channel for the port and register it to the selector.
+     *
+     * @param port the port to listen to.
+     */
+    private void open(int port) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ,
+                    plainPorts.contains(port) ? Event.UDP_PLAIN_PACKET_RECEIVED : Event.UDP_PACKET_RECEIVED);
+            channels.put(port, channel);
+        } catch (IOException e) {
+            logger.error("Cannot listen to UDP port {}", port, e);
+            if (channel != null) {
+                close(channel);
+            }
+        }
+    }
+
+    /**
+     * Send a datagram from one of the listening ports, so that replies sent back to the source port are received
+     * by this listener.
+     *
+     * @param port the local port to send from.
+     * @param data the datagram.
+     * @param target the destination address.
+     * @throws IOException when the datagram cannot be sent.
+     */
+    public void send(int port, ByteBuffer data, SocketAddress target) throws IOException {
+        DatagramChannel channel = channels.get(port);
+        if (channel == null) {
+            throw new IOException("Not listening to UDP port " + port);
+        }
+        channel.send(data, target);
+    }
+
+    /**
+     * Receive the datagrams of all ports, using a single buffer.
+     */
+    private void run() {
+        ByteBuffer buf = ByteBuffer.allocate(UDP_SOCKET_BUFFER_SIZE);
+        while (running) {
+            try {
+                selector.select(UDP_SOCKET_TIMEOUT);
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        DatagramChannel channel = (DatagramChannel) key.channel();
+                        Event event = (Event) key.attachment();
+                        buf.clear();
+                        while (channel.receive(buf) != null) {
+                            try {
+                                emit(event, buf);
+                            } catch (RuntimeException ex) {
+                                logger.error("Error handling UDP packet", ex);
                             }
+                            buf.clear();
                         }
                     }
                 }
-            };
-            task = scheduler.submit(runnable);
+            } catch (IOException ex) {
+                logger.error("DatagramEventEmitter", ex);
+            }
         }
     }
 
     @Override
-    public void stop() {
+    public synchronized void stop() {
         running = false;
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                close(key.channel());
+            }
+            selector.wakeup();
+            close(selector);
+            selector = null;
+        }
+        channels.clear();
         if (task != null) {
             task.cancel(true);
             task = null;
@@ -89,7 +177,20 @@ public class DatagramListener extends SingleEventEmitter<DatagramListener.Event,
         super.stop();
     }
 
+    /**
+     * Close the resource, silently ignoring IOExceptions.
+     *
+     * @param closeable the resource to close.
+     */
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     public enum Event {
-        UDP_PACKET_RECEIVED;
+        UDP_PACKET_RECEIVED,
+        UDP_PLAIN_PACKET_RECEIVED;
     }
 }
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.openhab.binding.tuya.internal.data.Version;
+import org.openhab.binding.tuya.internal.util.MessageParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Active discovery. Sends the protocol 3.5 device info request to the broadcast address and to every host of the
+ * local subnets, so devices announce themselves without waiting for their next periodic broadcast. The probes are
+ * sent from the port of the datagram listener, so the replies are processed like any other broadcast. To avoid
+ * flooding the network, probes are sent in paced batches.
+ *
+ * @author Wim Vissers.
+ */
+public class DiscoveryProbe implements UdpConfig {
+
+    private final Logger logger = LoggerFactory.getLogger(DiscoveryProbe.class);
+
+    private final DatagramListener listener;
+    private final MessageParser parser;
+
+    // The probes sent in the current run, to recognize them when they are received by the listener.
+    private final List<byte[]> probes = new CopyOnWriteArrayList<>();
+
+    private ScheduledFuture<?> task;
+
+    public DiscoveryProbe(DatagramListener listener) {
+        this.listener = listener;
+        this.parser = new MessageParser(Version.V3_5);
+    }
+
+    /**
+     * Start a probe run of several rounds. A run that is still in progress is restarted.
+     *
+     * @param scheduler the scheduler for the paced batches.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        stop();
+        List<Target> targets = getTargets();
+        if (targets.isEmpty()) {
+            logger.debug("No network interface to send discovery probes.");
+            return;
+        }
+        logger.debug("Sending discovery probes to {} addresses.", targets.size());
+        schedule(scheduler, targets, 0, 0, 0);
+    }
+
+    /**
+     * Stop the current probe run, if any.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Return true when the datagram is one of the probes sent by this instance, received back by the listener.
+     *
+     * @param data the array holding the datagram.
+     * @param length the length of the datagram.
+     * @return true when it is a probe.
+     */
+    public boolean isProbe(byte[] data, int length) {
+        for (byte[] probe : probes) {
+            if (Arrays.equals(probe, 0, probe.length, data, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void schedule(ScheduledExecutorService scheduler, List<Target> targets, int round, int index,
+            long delayMillis) {
+        task = scheduler.schedule(() -> sendBatch(scheduler, targets, round, index), delayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send the next batch of probes, and schedule the next batch or round.
+     */
+    private void sendBatch(ScheduledExecutorService scheduler, List<Target> targets, int round, int index) {
+        if (index == 0) {
+            encodeProbes(targets);
+        }
+        int end = Math.min(index + PROBE_BATCH_SIZE, targets.size());
+        for (int i = index; i < end; i++) {
+            Target target = targets.get(i);
+            try {
+                listener.send(DEFAULT_V3_5_UDP_PORT, ByteBuffer.wrap(target.probe), target.address);
+            } catch (Exception e) {
+                logger.debug("Cannot send discovery probe to {}: {}", target.address, e.getMessage());
+            }
+        }
+        if (end < targets.size()) {
+            schedule(scheduler, targets, round, end, PROBE_BATCH_DELAY_MILLIS);
+        } else if (round + 1 < PROBE_ROUNDS) {
+            schedule(scheduler, targets, round + 1, 0, TimeUnit.SECONDS.toMillis(PROBE_ROUND_DELAY_SECONDS));
+        }
+    }
+
+    /**
+     * Encode a fresh probe for every local address. The probe carries the local address the devices should reply to.
+     */
+    private void encodeProbes(List<Target> targets) {
+        probes.clear();
+        InetAddress current = null;
+        byte[] probe = null;
+        for (Target target : targets) {
+            if (!target.local.equals(current)) {
+                current = target.local;
+                String payload = String.format("{\"from\":\"app\",\"ip\":\"%s\"}", current.getHostAddress());
+                try {
+                    probe = parser.encode(payload.getBytes(StandardCharsets.UTF_8), CommandByte.REQ_DEVINFO, 0);
+                    probes.add(probe);
+                } catch (Exception e) {
+                    logger.error("Cannot encode discovery probe", e);
+                    probe = new byte[0];
+                }
+            }
+            target.probe = probe;
+        }
+    }
+
+    /**
+     * Collect the broadcast address and the host addresses of all IPv4 subnets this host is connected to.
+     *
+     * @return the targets, grouped by local address.
+     */
+    private List<Target> getTargets() {
+        List<Target> targets = new ArrayList<>();
+        try {
+            for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!nif.isUp() || nif.isLoopback()) {
+                    continue;
+                }
+                for (InterfaceAddress address : nif.getInterfaceAddresses()) {
+                    if (address.getAddress() instanceof Inet4Address && address.getBroadcast() != null) {
+                        addTargets(targets, address.getAddress(), address.getBroadcast(),
+                                address.getNetworkPrefixLength());
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            logger.warn("Cannot list network interfaces: {}", e.getMessage());
+        }
+        return targets;
+    }
+
+    /**
+     * Add the broadcast address of the subnet, and every host of it when the subnet is small enough.
+     *
+     * @param targets the targets to add to.
+     * @param local the local address in the subnet.
+     * @param broadcast the broadcast address of the subnet.
+     * @param prefix the network prefix length of the subnet.
+     */
+    static void addTargets(List<Target> targets, InetAddress local, InetAddress broadcast, int prefix) {
+        targets.add(new Target(local, broadcast));
+        if (prefix < PROBE_MIN_PREFIX_LENGTH || prefix > 30) {
+            return;
+        }
+        byte[] bytes = local.getAddress();
+        int ip = ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+        int mask = -1 << (32 - prefix);
+        int network = ip & mask;
+        int hosts = ~mask;
+        for (int host = 1; host < hosts; host++) {
+            int addr = network | host;
+            if (addr != ip) {
+                try {
+                    targets.add(new Target(local, InetAddress.getByAddress(new byte[] { (byte) (addr >>> 24),
+                            (byte) (addr >>> 16), (byte) (addr >>> 8), (byte) addr })));
+                } catch (UnknownHostException e) {
+                    // Cannot happen for a 4 byte address.
+                }
+            }
+        }
+    }
+
+    /**
+     * Destination of a probe.
+     */
+    static class Target {
+
+        private final InetAddress local;
+        final InetSocketAddress address;
+        private byte[] probe;
+
+        Target(InetAddress local, InetAddress address) {
+            this.local = local;
+            this.address = new InetSocketAddress(address, DEFAULT_V3_5_UDP_PORT);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the health of all started clients with a single periodic task. Each client keeps a small health record,
+ * and clients that stopped responding are reconnected, with an exponential backoff per client and a limit on the
+ * number of reconnects per sweep. Clients of devices that stopped broadcasting are left alone, they are reconnected
+ * when the device broadcasts again.
+ *
+ * @author Wim Vissers.
+ */
+public class FleetMonitor implements TcpConfig {
+
+    // Create and store the singleton implementation.
+    private static final FleetMonitor INSTANCE = new FleetMonitor();
+
+    private final Logger logger = LoggerFactory.getLogger(FleetMonitor.class);
+
+    private final Set<TuyaClient> clients = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> task;
+
+    /**
+     * Private constructor to ensure singleton.
+     */
+    private FleetMonitor() {
+    }
+
+    /**
+     * Get the singleton instance.
+     *
+     * @return the instance.
+     */
+    public static FleetMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start monitoring the client. The sweep is started with the first client.
+     *
+     * @param client the client.
+     * @param scheduler the scheduler to run the sweep.
+     */
+    public synchronized void register(TuyaClient client, ScheduledExecutorService scheduler) {
+        clients.add(client);
+        if (task == null) {
+            task = scheduler.scheduleWithFixedDelay(this::sweep, WATCHDOG_CHECK_SECONDS, WATCHDOG_CHECK_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop monitoring the client. The sweep is stopped with the last client.
+     *
+     * @param client the client.
+     */
+    public synchronized void unregister(TuyaClient client) {
+        clients.remove(client);
+        if (clients.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Check all clients, and reconnect the unhealthy ones that are not backing off.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        int reconnects = 0;
+        int unhealthy = 0;
+        for (TuyaClient client : clients) {
+            Health health = client.getHealth();
+            if (client.isHealthy(now)) {
+                health.attempts = 0;
+                health.notBefore = 0;
+                continue;
+            }
+            unhealthy++;
+            if (now < health.notBefore || reconnects >= FLEET_MAX_RECONNECTS_PER_SWEEP) {
+                continue;
+            }
+            health.notBefore = now + TimeUnit.SECONDS
+                    .toMillis(Math.min(RECONNECT_MAX_BACKOFF_SECONDS, RECONNECT_BASE_BACKOFF_SECONDS << Math.min(health.attempts, 16)));
+            health.attempts++;
+            reconnects++;
+            try {
+                client.reconnect();
+            } catch (RuntimeException e) {
+                logger.warn("Reconnect failed: {}", e.getMessage());
+            }
+        }
+        if (unhealthy > 0) {
+            logger.debug("Fleet sweep: {} clients, {} unhealthy, {} reconnects.", clients.size(), unhealthy,
+                    reconnects);
+        }
+    }
+
+    /**
+     * The health record of a client.
+     */
+    static class Health {
+
+        // Time the last message was received.
+        volatile long lastReceived;
+        // Backoff state, only used by the sweep.
+        int attempts;
+        long notBefore;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.binding.tuya.handler.AbstractTuyaHandler;
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.openhab.binding.tuya.internal.data.DeviceState;
+import org.openhab.binding.tuya.internal.data.MergedState;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.DeviceRepository;
+
+/**
+ * Send the same dps to a group of devices, e.g. to switch all lamps of a room to a scene. The messages are sent in
+ * parallel with a limited number in flight, and the returned result tells when the whole group is done and how long
+ * each device took to respond.
+ *
+ * @author Wim Vissers.
+ */
+public class GroupCommand implements TcpConfig {
+
+    private final DeviceState<?> state;
+
+    /**
+     * Create a group command.
+     *
+     * @param dps the dps to send, key is the dp id.
+     */
+    public GroupCommand(Map<String, ?> dps) {
+        MergedState merged = new MergedState();
+        dps.forEach(merged::set);
+        this.state = merged;
+    }
+
+    public GroupCommand(DeviceState<?> state) {
+        this.state = state;
+    }
+
+    /**
+     * Find the clients of the devices.
+     *
+     * @param devIds the device ids.
+     * @return the clients of the devices that have a started handler.
+     */
+    public static List<TuyaClient> clientsOf(Collection<String> devIds) {
+        List<TuyaClient> clients = new ArrayList<>();
+        for (String devId : devIds) {
+            DeviceDescriptor dd = DeviceRepository.getInstance().getDeviceDescriptor(devId);
+            AbstractTuyaHandler handler = dd == null ? null : dd.getHandler();
+            TuyaClient client = handler == null ? null : handler.getClient();
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * Send the dps to the clients, with the default concurrency and timeout.
+     *
+     * @param clients the clients.
+     * @param executor the executor to send the next messages from.
+     * @return the result, completed when all devices responded or failed.
+     */
+    public CompletableFuture<Result> send(Collection<TuyaClient> clients, Executor executor) {
+        return send(clients, DEFAULT_GROUP_CONCURRENCY, GROUP_RESPONSE_TIMEOUT_MILLIS, executor);
+    }
+
+    /**
+     * Send the dps to the clients.
+     *
+     * @param clients the clients.
+     * @param concurrency the maximum number of messages in flight.
+     * @param timeoutMillis the time to wait for the response of a device.
+     * @param executor the executor to send the next messages from.
+     * @return the result, completed when all devices responded or failed.
+     */
+    public CompletableFuture<Result> send(Collection<TuyaClient> clients, int concurrency, long timeoutMillis,
+            Executor executor) {
+        Result result = new Result(clients.size());
+        ConcurrentLinkedQueue<TuyaClient> waiting = new ConcurrentLinkedQueue<>(clients);
+        if (waiting.isEmpty()) {
+            result.finish();
+        }
+        for (int i = Math.min(Math.max(1, concurrency), waiting.size()); i > 0; i--) {
+            sendNext(waiting, result, timeoutMillis, executor);
+        }
+        return result.completion;
+    }
+
+    /**
+     * Send to the next waiting client, and continue with the next one when it is done.
+     */
+    private void sendNext(ConcurrentLinkedQueue<TuyaClient> waiting, Result result, long timeoutMillis,
+            Executor executor) {
+        TuyaClient client = waiting.poll();
+        if (client == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        client.sendAsync(state, CommandByte.CONTROL).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((response, ex) -> {
+                    if (ex == null && response.getReturnCode() != 0) {
+                        // The device responded, but did not accept the command.
+                        ex = new IOException("device returned code " + response.getReturnCode());
+                    }
+                    result.done(client.getDevId(), System.nanoTime() - start, ex);
+                    sendNext(waiting, result, timeoutMillis, executor);
+                }, executor);
+    }
+
+    /**
+     * The combined result of a group command.
+     */
+    public static class Result {
+
+        private final CompletableFuture<Result> completion = new CompletableFuture<>();
+        private final long started = System.nanoTime();
+        private final AtomicInteger remaining;
+        private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+        private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        private volatile long elapsedNanos;
+
+        Result(int size) {
+            remaining = new AtomicInteger(size);
+        }
+
+        private void done(String devId, long nanos, Throwable ex) {
+            if (ex == null) {
+                latencies.put(devId, TimeUnit.NANOSECONDS.toMillis(nanos));
+            } else {
+                failures.put(devId, ex);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            elapsedNanos = System.nanoTime() - started;
+            completion.complete(this);
+        }
+
+        /**
+         * Return the response time of the devices that responded, in milliseconds.
+         *
+         * @return the latencies, key is the device id.
+         */
+        public Map<String, Long> getLatencies() {
+            return Collections.unmodifiableMap(latencies);
+        }
+
+        /**
+         * Return the errors of the devices that did not respond.
+         *
+         * @return the errors, key is the device id.
+         */
+        public Map<String, Throwable> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Return the time until the last device was done, in milliseconds.
+         *
+         * @return the time.
+         */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            long max = latencies.values().stream().mapToLong(Long::longValue).max().orElse(0);
+            return String.format("%d devices responded, %d failed, slowest %d ms, total %d ms.", latencies.size(),
+                    failures.size(), max, getElapsedMillis());
+        }
+    }
+}
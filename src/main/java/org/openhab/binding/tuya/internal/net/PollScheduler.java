@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queries the status of all started clients with a single periodic task. A device is only queried when it did not
+ * report its status for a while: every status push restarts its poll interval. The interval is short for a device
+ * that was commanded recently, to catch changes that were not reported. Otherwise it is a multiple of the moving
+ * average of the time between the pushes of the device, within the minimum and maximum intervals. The first poll of each
+ * device is placed at an evenly spread phase of the interval, so the devices are not polled at the same moment, and
+ * the total number of queries per second is limited.
+ *
+ * @author Wim Vissers.
+ */
+public class PollScheduler implements TcpConfig {
+
+    // The golden ratio conjugate, to spread the phases evenly however many clients there are.
+    private static final double PHASE_STEP = 0.6180339887498949;
+
+    // Create and store the singleton implementation.
+    private static final PollScheduler INSTANCE = new PollScheduler();
+
+    private final Logger logger = LoggerFactory.getLogger(PollScheduler.class);
+
+    private final Set<TuyaClient> clients = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> task;
+    private double phase;
+
+    // Token bucket for the queries per second budget, only used by the tick.
+    private double tokens;
+    private long lastTick;
+
+    /**
+     * Private constructor to ensure singleton.
+     */
+    private PollScheduler() {
+    }
+
+    /**
+     * Get the singleton instance.
+     *
+     * @return the instance.
+     */
+    public static PollScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start polling the client. The first poll is at the next phase of the long interval.
+     *
+     * @param client the client.
+     * @param scheduler the scheduler to run the polls.
+     */
+    public synchronized void register(TuyaClient client, ScheduledExecutorService scheduler) {
+        phase = (phase + PHASE_STEP) % 1.0;
+        client.getPoll().next = System.currentTimeMillis()
+                + (long) (phase * TimeUnit.SECONDS.toMillis(POLL_MAX_INTERVAL_SECONDS));
+        clients.add(client);
+        if (task == null) {
+            lastTick = System.currentTimeMillis();
+            task = scheduler.scheduleWithFixedDelay(this::tick, POLL_TICK_MILLIS, POLL_TICK_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop polling the client.
+     *
+     * @param client the client.
+     */
+    public synchronized void unregister(TuyaClient client) {
+        clients.remove(client);
+        if (clients.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Query the clients that are due, oldest first, as far as the budget allows.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(POLL_QUERIES_PER_SECOND, tokens + (now - lastTick) * POLL_QUERIES_PER_SECOND / 1000.0);
+        lastTick = now;
+        List<TuyaClient> due = new ArrayList<>();
+        for (TuyaClient client : clients) {
+            if (client.getPoll().next <= now && client.isOnline()) {
+                due.add(client);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        due.sort(Comparator.comparingLong(client -> client.getPoll().next));
+        for (TuyaClient client : due) {
+            if (tokens < 1) {
+                logger.trace("Poll budget exhausted, {} devices wait.", due.size());
+                return;
+            }
+            tokens--;
+            Poll poll = client.getPoll();
+            poll.next = now + poll.interval(now);
+            try {
+                client.send(null, CommandByte.DP_QUERY);
+            } catch (Exception e) {
+                logger.debug("Cannot query device {}: {}", client.getDevId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The polling state of a client.
+     */
+    static class Poll {
+
+        // Time of the next poll, of the last command and of the last status push.
+        volatile long next;
+        volatile long commanded;
+        volatile long lastPush;
+        // Moving average of the time between status pushes, 0 until two pushes were seen.
+        volatile double averageGap;
+
+        /**
+         * Called when the device pushed its status by itself, to learn how often it reports and to postpone the next
+         * poll.
+         */
+        void pushed(long now) {
+            if (lastPush > 0 && now > lastPush) {
+                long gap = now - lastPush;
+                averageGap = averageGap == 0 ? gap : averageGap + POLL_GAP_WEIGHT * (gap - averageGap);
+            }
+            lastPush = now;
+            next = now + interval(now);
+        }
+
+        /**
+         * Called when the device answered a status query. The answer postpones the next poll, but is not a push: its
+         * timing follows the polls, not the device.
+         */
+        void answered(long now) {
+            next = now + interval(now);
+        }
+
+        void commanded(long now) {
+            commanded = now;
+            // Do not wait the long interval to verify the command.
+            next = Math.min(next, now + interval(now));
+        }
+
+        /**
+         * Return the poll interval. Shortly after a command it is the minimum interval. Otherwise it follows the
+         * average time between pushes, so a push that went missing is noticed after a few of the usual gaps, and a
+         * device that never pushes is polled at the maximum interval.
+         */
+        long interval(long now) {
+            long min = TimeUnit.SECONDS.toMillis(POLL_MIN_INTERVAL_SECONDS);
+            long max = TimeUnit.SECONDS.toMillis(POLL_MAX_INTERVAL_SECONDS);
+            if (now - commanded < TimeUnit.SECONDS.toMillis(POLL_COMMAND_WINDOW_SECONDS)) {
+                return min;
+            }
+            if (averageGap == 0) {
+                return max;
+            }
+            return Math.max(min, Math.min(max, (long) (averageGap * POLL_GAP_FACTOR)));
+        }
+    }
+}
@@ -10,11 +10,15 @@ package org.openhab.binding.tuya.internal.net;
 
 import org.openhab.binding.tuya.internal.data.CommandByte;
 import org.openhab.binding.tuya.internal.data.DeviceState;
+import org.openhab.binding.tuya.internal.data.Message;
 import org.openhab.binding.tuya.internal.data.Version;
 import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
 import org.openhab.binding.tuya.internal.util.MessageParser;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Item to populate the TuyaClient send queue.
@@ -26,6 +30,15 @@ public class QueueItem {
     private final DeviceDescriptor device;
     private final CommandByte commandByte;
     private final DeviceState deviceState;
+    private CompletableFuture<Message> completion;
+
+    // Times in nanoseconds, for the metrics.
+    private final long queued = System.nanoTime();
+    private long written;
+
+    // The sequence number and time of the last write, to recognize the response.
+    private volatile long sequenceNo = -1;
+    private volatile long lastWritten;
 
     public QueueItem(DeviceDescriptor device, DeviceState deviceState, CommandByte commandByte) {
         this.device = device;
@@ -33,6 +46,97 @@ public class QueueItem {
         this.commandByte = commandByte;
     }
 
+    long getQueued() {
+        return queued;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    /**
+     * Return the time of the last write, which differs from the first write when the item was written again after a
+     * reconnect.
+     *
+     * @return the time in nanoseconds, 0 when not written.
+     */
+    long getLastWritten() {
+        return lastWritten;
+    }
+
+    /**
+     * Record a write of this item.
+     *
+     * @param now the time in nanoseconds.
+     * @param sequenceNo the sequence number the item was written with.
+     * @return true when it is the first write.
+     */
+    boolean written(long now, long sequenceNo) {
+        this.sequenceNo = sequenceNo;
+        lastWritten = now;
+        if (written == 0) {
+            written = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return true when the message is the response of the device to this item: a message with the same command and
+     * the sequence number of the last write. Devices that do not echo the sequence number send 0. Unsolicited
+     * messages, like the STATUS a device pushes after a CONTROL, never match.
+     *
+     * @param message the received message.
+     * @return true when it is the response.
+     */
+    boolean isResponse(Message message) {
+        long received = message.getSequenceNumber();
+        return sequenceNo >= 0 && message.getCommandByte() == commandByte && (received == sequenceNo || received == 0);
+    }
+
+    /**
+     * Return true when the item was written, but the device did not respond in time.
+     *
+     * @param now the time in nanoseconds.
+     * @return true when the response is overdue.
+     */
+    boolean isOverdue(long now) {
+        return sequenceNo >= 0 && now - lastWritten > TimeUnit.MILLISECONDS.toNanos(TcpConfig.RESPONSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Set the future to complete when the device responds to this item.
+     *
+     * @param completion the future.
+     * @return this item.
+     */
+    public QueueItem withCompletion(CompletableFuture<Message> completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    /**
+     * Called when the device responded to this item.
+     *
+     * @param response the response.
+     */
+    void complete(Message response) {
+        if (completion != null) {
+            completion.complete(response);
+        }
+    }
+
+    /**
+     * Called when this item is removed from the queue without a response.
+     *
+     * @param reason the reason.
+     */
+    void fail(String reason) {
+        if (completion != null) {
+            completion.completeExceptionally(new IOException(reason));
+        }
+    }
+
     public CommandByte getCommandByte() {
         return commandByte;
     }
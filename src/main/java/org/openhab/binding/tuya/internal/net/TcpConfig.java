@@ -29,8 +29,42 @@ public interface TcpConfig {
     public static final int HEARTBEAT_RETRIES = 3;
     public static final int OUTSTANDING_HEARTBEATS_LIMIT = 3;
     public static final int WATCHDOG_CHECK_SECONDS = 30;
+    public static final int FLEET_MAX_RECONNECTS_PER_SWEEP = 16;
+    // The backoff between reconnects of a client doubles from the base up to the maximum.
+    public static final int RECONNECT_BASE_BACKOFF_SECONDS = 2;
+    public static final int RECONNECT_MAX_BACKOFF_SECONDS = 300;
     public static final int DEFAULT_QUEUE_SIZE = 20;
+    // Time for a device to respond to a message, before the next message is sent.
+    public static final int RESPONSE_TIMEOUT_MILLIS = 5000;
     public static final int STATUS_REQUEST_DELAY_SECONDS = 120;
+    // Time for a device to confirm a state that is published before its response.
+    public static final int OPTIMISTIC_TIMEOUT_SECONDS = 5;
+    // Commands within this window are sent as a single CONTROL message, 0 to disable.
+    public static final int DEFAULT_COMMAND_BATCH_MILLIS = 20;
+
+    // Settings for admitting connections, to avoid connecting to all devices at once at startup.
+    public static final int DEFAULT_CONNECT_CONCURRENCY = 8;
+    public static final int CONNECT_TIMEOUT_SECONDS = 10;
+    // Settings for polling the status of devices that do not report it by themselves.
+    public static final int POLL_TICK_MILLIS = 250;
+    public static final int POLL_MIN_INTERVAL_SECONDS = 15;
+    public static final int POLL_MAX_INTERVAL_SECONDS = 300;
+    public static final int POLL_COMMAND_WINDOW_SECONDS = 120;
+    public static final int POLL_QUERIES_PER_SECOND = 5;
+    // The poll interval is this multiple of the average time between pushes, averaged with this weight per push.
+    public static final int POLL_GAP_FACTOR = 3;
+    public static final double POLL_GAP_WEIGHT = 0.25;
+    // Settings for sending to groups of devices.
+    public static final int DEFAULT_GROUP_CONCURRENCY = 16;
+    public static final int GROUP_RESPONSE_TIMEOUT_MILLIS = 5000;
+    // Number of time-to-online samples kept for the startup statistics.
+    public static final int CONNECT_STATISTICS_SIZE = 4096;
+    // Settings for decoding incoming frames outside the selector thread.
+    public static final int MAX_DECODE_THREADS = 4;
+    public static final int DECODE_BATCH_SIZE = 16;
+    // Settings for capturing the traffic to a file.
+    public static final int CAPTURE_BUFFER_SIZE = 65536;
+    public static final long CAPTURE_MAX_BYTES = 256L * 1024 * 1024;
 
     /**
      * Default method to close used resources and silently ignoring IOExceptions if they occur.
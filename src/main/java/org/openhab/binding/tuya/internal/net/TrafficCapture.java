@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This singleton writes the raw traffic of the binding to a file, so it can be replayed later by the TrafficReplay.
+ * The file starts with a header of the magic number and the start time in milliseconds. Every record that follows has
+ * a fixed layout, so the file can be memory-mapped and read without copying:
+ * <ul>
+ * <li>8 bytes: nanoseconds since the start of the capture.</li>
+ * <li>1 byte: the kind of record, TCP_IN, TCP_OUT, UDP, UDP_PLAIN or SESSION_KEY.</li>
+ * <li>1 byte: the length of the device id.</li>
+ * <li>4 bytes: the length of the data.</li>
+ * <li>the device id, followed by the data.</li>
+ * </ul>
+ * The session keys of version 3.5 devices are captured too, since the frames cannot be decoded without them. A capture
+ * should be treated like the local keys in the configuration.
+ *
+ * @author Wim Vissers.
+ */
+public class TrafficCapture implements TcpConfig {
+
+    // The kinds of records.
+    public static final byte TCP_IN = 1;
+    public static final byte TCP_OUT = 2;
+    public static final byte UDP = 3;
+    public static final byte SESSION_KEY = 4;
+    // Datagrams of the unencrypted discovery port.
+    public static final byte UDP_PLAIN = 5;
+
+    // "TUYACAP1"
+    static final long MAGIC = 0x5455594143415031L;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 14;
+
+    // Create and store the singleton implementation.
+    private static final TrafficCapture INSTANCE = new TrafficCapture();
+
+    private final Logger logger = LoggerFactory.getLogger(TrafficCapture.class);
+
+    // Checked without locking, so an inactive capture costs a single volatile read.
+    private volatile boolean active;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private Path path;
+    private long origin;
+    private long size;
+    private long records;
+
+    /**
+     * Private constructor to ensure singleton.
+     */
+    private TrafficCapture() {
+    }
+
+    /**
+     * Get the singleton instance.
+     *
+     * @return the instance.
+     */
+    public static TrafficCapture getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start capturing to the file. A running capture is stopped first. An existing file is overwritten.
+     *
+     * @param file the file.
+     * @throws IOException when the file cannot be created.
+     */
+    public synchronized void start(Path file) throws IOException {
+        stop();
+        channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(CAPTURE_BUFFER_SIZE);
+        path = file;
+        origin = System.nanoTime();
+        records = 0;
+        buffer.putLong(MAGIC).putLong(System.currentTimeMillis());
+        size = HEADER_SIZE;
+        active = true;
+        logger.info("Capturing Tuya traffic to {}.", file);
+    }
+
+    /**
+     * Stop capturing and close the file.
+     */
+    public synchronized void stop() {
+        if (channel == null) {
+            return;
+        }
+        active = false;
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Capture {} could not be written: {}", path, e.getMessage());
+        }
+        close(channel);
+        logger.info("Captured {} records, {} bytes to {}.", records, size, path);
+        channel = null;
+        buffer = null;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Return the file of the current capture.
+     *
+     * @return the file, or null when not capturing.
+     */
+    public synchronized Path getPath() {
+        return channel == null ? null : path;
+    }
+
+    /**
+     * Record raw traffic. Does nothing when not capturing.
+     *
+     * @param kind the kind of record.
+     * @param devId the device id, or null when unknown.
+     * @param data the data.
+     * @param length the number of bytes of data.
+     */
+    public void record(byte kind, String devId, byte[] data, int length) {
+        if (!active) {
+            return;
+        }
+        long now = System.nanoTime();
+        byte[] id = devId == null ? new byte[0] : devId.getBytes(UTF_8);
+        int idLength = Math.min(id.length, 255);
+        int recordSize = RECORD_HEADER_SIZE + idLength + length;
+        synchronized (this) {
+            if (!active) {
+                return;
+            }
+            try {
+                if (size + recordSize > CAPTURE_MAX_BYTES) {
+                    logger.warn("Capture {} reached its maximum size.", path);
+                    stop();
+                    return;
+                }
+                if (buffer.remaining() < recordSize) {
+                    flush();
+                }
+                if (buffer.remaining() < recordSize) {
+                    // Larger than the buffer, write it directly.
+                    ByteBuffer large = ByteBuffer.allocate(recordSize);
+                    put(large, now, kind, id, idLength, data, length);
+                    large.flip();
+                    while (large.hasRemaining()) {
+                        channel.write(large);
+                    }
+                } else {
+                    put(buffer, now, kind, id, idLength, data, length);
+                }
+                size += recordSize;
+                records++;
+            } catch (IOException e) {
+                logger.warn("Capture {} could not be written: {}", path, e.getMessage());
+                stop();
+            }
+        }
+    }
+
+    private void put(ByteBuffer target, long now, byte kind, byte[] id, int idLength, byte[] data, int length) {
+        target.putLong(now - origin).put(kind).put((byte) idLength).putInt(length);
+        target.put(id, 0, idLength).put(data, 0, length);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
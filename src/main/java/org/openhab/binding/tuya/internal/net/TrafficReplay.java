@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import org.openhab.binding.tuya.internal.data.Message;
+import org.openhab.binding.tuya.internal.data.Version;
+import org.openhab.binding.tuya.internal.util.MessageParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds a capture of the TrafficCapture through the decoding path of the binding, without sockets. Datagrams and
+ * incoming frames are decoded by their own MessageParsers and passed to the message listener, if any. The replay is
+ * isolated from the running binding: the DeviceRepository, the clients and the handlers are not touched, so stale
+ * captured states never reach the items, and nothing is captured again. Outgoing frames are only counted, there is no
+ * device to receive them. The records are replayed with their original timing, accelerated by the speed factor, or as
+ * fast as possible.
+ * <p>
+ * The bytes allocated by the replay thread are measured as well, so a capture of a typical load can be replayed to
+ * check that a change does not put garbage back on the per-frame path.
+ *
+ * @author Wim Vissers.
+ */
+public class TrafficReplay {
+
+    private final Logger logger = LoggerFactory.getLogger(TrafficReplay.class);
+
+    private final Path file;
+
+    // The parsers per device, created from the local key or the captured session key.
+    private final Map<String, MessageParser> parsers = new HashMap<>();
+    private final MessageParser datagramParser = new MessageParser();
+    private final MessageParser plainDatagramParser = new MessageParser().withPlainPayloads();
+
+    // Called with the device id and each decoded incoming frame.
+    private BiConsumer<String, Message> listener;
+
+    /**
+     * Create a replay of the capture.
+     *
+     * @param file the capture file.
+     */
+    public TrafficReplay(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Set the listener that is called with the device id and each decoded incoming frame, e.g. to convert the frames
+     * to device states.
+     *
+     * @param listener the listener.
+     * @return this replay.
+     */
+    public TrafficReplay onMessage(BiConsumer<String, Message> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Replay the capture. Blocks until all records are replayed.
+     *
+     * @param speed the speed factor, e.g. 1 for the original timing, or 0 to replay as fast as possible.
+     * @return the result.
+     * @throws IOException when the file cannot be read, or is not a capture.
+     */
+    public Result run(double speed) throws IOException {
+        Result result = new Result();
+        parsers.clear();
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < TrafficCapture.HEADER_SIZE || buffer.getLong() != TrafficCapture.MAGIC) {
+                throw new IOException("Not a Tuya capture: " + file);
+            }
+            buffer.getLong();
+            com.sun.management.ThreadMXBean threads = allocationBean();
+            long allocated = threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            while (buffer.remaining() >= TrafficCapture.RECORD_HEADER_SIZE) {
+                long offset = buffer.getLong();
+                byte kind = buffer.get();
+                int idLength = buffer.get() & 0xff;
+                int length = buffer.getInt();
+                if (buffer.remaining() < idLength + length) {
+                    logger.warn("Capture {} is truncated.", file);
+                    break;
+                }
+                byte[] id = new byte[idLength];
+                buffer.get(id);
+                byte[] data = new byte[length];
+                buffer.get(data);
+                if (speed > 0) {
+                    long due = start + (long) (offset / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                replay(kind, new String(id, UTF_8), data, result);
+                result.records++;
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+            if (threads != null) {
+                result.allocatedBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+            }
+        }
+        return result;
+    }
+
+    private void replay(byte kind, String devId, byte[] data, Result result) {
+        switch (kind) {
+            case TrafficCapture.UDP:
+            case TrafficCapture.UDP_PLAIN:
+                try {
+                    MessageParser parser = kind == TrafficCapture.UDP ? datagramParser : plainDatagramParser;
+                    parser.decode(data).toJsonDiscovery();
+                    result.datagrams++;
+                } catch (Exception e) {
+                    logger.debug("Captured datagram could not be decoded: {}", e.getMessage());
+                    result.errors++;
+                }
+                break;
+            case TrafficCapture.SESSION_KEY:
+                parsers.put(devId, new MessageParser(Version.V3_5, data).withDevId(devId));
+                break;
+            case TrafficCapture.TCP_IN:
+                MessageParser parser = parsers.get(devId);
+                if (parser == null) {
+                    // The local key is taken from the client, the client itself is not used.
+                    TuyaClient client = clientOf(devId);
+                    if (client != null) {
+                        parser = client.newParser();
+                        parsers.put(devId, parser);
+                    }
+                }
+                if (parser == null) {
+                    result.skipped++;
+                    break;
+                }
+                try {
+                    Message message = parser.decode(data);
+                    if (listener != null) {
+                        listener.accept(devId, message);
+                    }
+                    result.frames++;
+                } catch (Exception e) {
+                    logger.debug("Captured frame of device '{}' could not be decoded: {}", devId, e.getMessage());
+                    result.errors++;
+                }
+                break;
+            case TrafficCapture.TCP_OUT:
+                result.sent++;
+                break;
+            default:
+                result.skipped++;
+        }
+    }
+
+    /**
+     * Return the bean to measure the allocations of a thread, or null when the JVM does not support it.
+     */
+    private com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private TuyaClient clientOf(String devId) {
+        List<TuyaClient> clients = GroupCommand.clientsOf(Collections.singleton(devId));
+        return clients.isEmpty() ? null : clients.get(0);
+    }
+
+    /**
+     * The result of a replay.
+     */
+    public static class Result {
+        private long records;
+        private long datagrams;
+        private long frames;
+        private long sent;
+        private long skipped;
+        private long errors;
+        private long elapsedNanos;
+        private long allocatedBytes = -1;
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getDatagrams() {
+            return datagrams;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * Return the number of records that were not replayed, e.g. frames of devices without a known key.
+         *
+         * @return the number of records.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * Return the bytes allocated by the replay, including the copies of the records from the capture.
+         *
+         * @return the number of bytes, or -1 when the JVM cannot measure it.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Return the bytes allocated per replayed record.
+         *
+         * @return the number of bytes, or -1 when unknown.
+         */
+        public long getAllocatedBytesPerRecord() {
+            return allocatedBytes < 0 || records == 0 ? -1 : allocatedBytes / records;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            String result = String.format(
+                    "%d records in %d ms (%.0f/s): %d datagrams, %d frames received, %d sent, %d skipped, %d errors",
+                    records, getElapsedMillis(), seconds > 0 ? records / seconds : 0.0, datagrams, frames, sent,
+                    skipped, errors);
+            if (getAllocatedBytesPerRecord() >= 0) {
+                result += String.format(", %d bytes allocated per record", getAllocatedBytesPerRecord());
+            }
+            return result;
+        }
+    }
+}
@@ -9,7 +9,6 @@
 package org.openhab.binding.tuya.internal.net;
 
 import static java.nio.channels.SelectionKey.OP_READ;
-import static java.nio.channels.SelectionKey.OP_WRITE;
 import static org.openhab.binding.tuya.internal.data.CommandByte.SESS_KEY_NEG_FINISH;
 import static org.openhab.binding.tuya.internal.data.CommandByte.SESS_KEY_NEG_START;
 
@@ -19,18 +18,23 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openhab.binding.tuya.internal.data.CommandByte;
 import org.openhab.binding.tuya.internal.data.DeviceState;
+import org.openhab.binding.tuya.internal.data.MergedState;
 import org.openhab.binding.tuya.internal.data.Message;
 import org.openhab.binding.tuya.internal.data.Version;
 import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.DeviceRepository;
 import org.openhab.binding.tuya.internal.exceptions.ParseException;
+import org.openhab.binding.tuya.internal.jfr.QueueEvent;
+import org.openhab.binding.tuya.internal.jfr.ReconnectEvent;
+import org.openhab.binding.tuya.internal.jfr.SessionKeyEvent;
 import org.openhab.binding.tuya.internal.util.MessageParser;
+import org.openhab.binding.tuya.internal.util.SerialExecutor;
 import org.openhab.binding.tuya.internal.util.SingleEventEmitter;
 import org.openhab.binding.tuya.internal.util.TuyaCipher;
 import org.slf4j.Logger;
@@ -49,7 +53,7 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
 
     // The message parser is to encode/decode messages. It is dedicated to a
     // single device, since the localKey is different from device to device.
-    private MessageParser messageParser;
+    private volatile MessageParser messageParser;
 
     // The sequence number of messages sent to the device.
     private long currentSequenceNo;
@@ -71,8 +75,35 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
 
     private DeviceDescriptor device;
 
+    // The health record, checked by the FleetMonitor.
+    private final FleetMonitor.Health health = new FleetMonitor.Health();
+
+    // The transport metrics of the device.
+    private final ClientMetrics metrics;
+
+    // Start of the current connection attempt in nanoseconds, 0 when not connecting.
+    private volatile long connectStarted;
+
+    // The polling state, used by the PollScheduler.
+    private final PollScheduler.Poll poll = new PollScheduler.Poll();
+
+    // The scheduler the client was started with.
+    private volatile ScheduledExecutorService scheduler;
+
+    // Decodes the incoming frames on the worker pool, in the order they arrived.
+    private final SerialExecutor inbound = new SerialExecutor(TuyaClientService.getInstance().getWorkers(),
+            DECODE_BATCH_SIZE);
+
+    // The message written last, waiting for its response. It is not written again on the same connection.
+    private volatile QueueItem inFlight;
+
+    // The CONTROL commands collected in the current batching window, and the task sending them. Guarded by the queue.
+    private MergedState batch;
+    private ScheduledFuture<?> batchTask;
 
     private boolean online;
+    // Set when the client is stopped. A stopped client is never started again, a new client is created instead.
+    private volatile boolean stopped;
     private final Logger logger;
 
     /**
@@ -86,7 +117,25 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
         this.retryCnt = new AtomicInteger(0);
 
         this.queue = new LinkedBlockingQueue<>(DEFAULT_QUEUE_SIZE);
-        this.messageParser = new MessageParser(device.getVersion(), device.getLocalKey());
+        this.metrics = ClientMetrics.of(device.getDevId());
+        this.metrics.setQueueDepth(queue::size);
+        this.messageParser = new MessageParser(device.getVersion(), device.getLocalKey())
+                .withDevId(device.getDevId());
+    }
+
+    /**
+     * Start this client when the ConnectionScheduler admits it, to limit the number of devices connecting at the same
+     * time.
+     *
+     * @param scheduler the scheduler.
+     * @param priority the priority, see ConnectionScheduler.
+     */
+    public void start(ScheduledExecutorService scheduler, int priority) {
+        if (stopped) {
+            return;
+        }
+        this.scheduler = scheduler;
+        ConnectionScheduler.getInstance().submit(this, priority, scheduler);
     }
 
     /**
@@ -96,16 +145,29 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
      * @param scheduler the scheduler.
      */
     public synchronized void start(ScheduledExecutorService scheduler) {
+        if (stopped) {
+            // Admitted after it was stopped, give the slot to the next client.
+            ConnectionScheduler.getInstance().release(this, false);
+            return;
+        }
+        this.scheduler = scheduler;
+        health.lastReceived = System.currentTimeMillis();
         try {
             connect();
         } catch (Exception ex) {
             online = false;
+            ConnectionScheduler.getInstance().release(this, false);
             emit(Event.CONNECTION_ERROR, new Message(ex));
         }
         if (heartbeat == null) {
             heartbeat = scheduler.scheduleAtFixedRate(new Runnable() {
                 @Override
                 public void run() {
+                    // Reconnecting an offline client is left to the FleetMonitor, with its backoff.
+                    if (!online) {
+                        logger.debug("Skipping heartbeat, device {} is offline.", device.getDevId());
+                        return;
+                    }
                     try {
                         send(null, CommandByte.HEART_BEAT);
                     } catch (Exception e) {
@@ -113,7 +175,59 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
                     }
                 }
             }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+            FleetMonitor.getInstance().register(this, scheduler);
+            PollScheduler.getInstance().register(this, scheduler);
+        }
+    }
+
+    /**
+     * Drop the connection and connect again when the ConnectionScheduler admits it. Called by the FleetMonitor for an
+     * unhealthy client.
+     */
+    synchronized void reconnect() {
+        if (stopped || heartbeat == null) {
+            return;
+        }
+        logger.debug("Reconnecting to device {}.", device.getDevId());
+        metrics.increment(ClientMetrics.Counter.RECONNECTS);
+        ReconnectEvent event = new ReconnectEvent();
+        if (event.shouldCommit()) {
+            event.devId = device.getDevId();
+            event.attempt = health.attempts;
+            event.commit();
+        }
+        online = false;
+        if (key != null) {
+            close(key.channel());
+            key.cancel();
+            key = null;
         }
+        heartbeatCnt.set(0);
+        ConnectionScheduler.getInstance().submit(this, ConnectionScheduler.PRIORITY_LOW, scheduler);
+    }
+
+    /**
+     * Return true when the client is connected and the device responds, or when the device is powered off so a
+     * reconnect is useless.
+     *
+     * @param now the current time.
+     * @return true when healthy.
+     */
+    boolean isHealthy(long now) {
+        if (isPoweredOff()) {
+            return true;
+        }
+        long silence = now - health.lastReceived;
+        return online && heartbeatCnt.get() <= HEARTBEAT_RETRIES
+                && silence < TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS * (HEARTBEAT_RETRIES + 1));
+    }
+
+    FleetMonitor.Health getHealth() {
+        return health;
+    }
+
+    PollScheduler.Poll getPoll() {
+        return poll;
     }
 
     /**
@@ -121,7 +235,11 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
      */
     @Override
     public synchronized void stop() {
+        stopped = true;
         online = false;
+        ConnectionScheduler.getInstance().cancel(this);
+        FleetMonitor.getInstance().unregister(this);
+        PollScheduler.getInstance().unregister(this);
         if (heartbeat != null) {
             heartbeat.cancel(true);
             heartbeat = null;
@@ -130,6 +248,19 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
         if (key != null) {
             close(key.channel());
             key.cancel();
+            key = null;
+        }
+        synchronized (queue) {
+            // Drop the commands of the current batching window.
+            if (batchTask != null) {
+                batchTask.cancel(false);
+                batchTask = null;
+            }
+            batch = null;
+        }
+        QueueItem item;
+        while ((item = queue.poll()) != null) {
+            item.fail("client stopped");
         }
 
         super.stop();
@@ -143,7 +274,8 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
 
         byte[] local_nonce = "0123456789abcdef".getBytes();
 
-        MessageParser messageParser = new MessageParser(device.getVersion(), device.getLocalKey());
+        MessageParser messageParser = new MessageParser(device.getVersion(), device.getLocalKey())
+                .withDevId(device.getDevId());
 
         currentSequenceNo = 1;
         channel = SocketChannel.open();
@@ -184,7 +316,8 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
         byte[] newKeyAll = cipher.encryptV5(xorKey, Arrays.copyOfRange(local_nonce, 0, 12), new byte[0]);
         byte[] newKey = Arrays.copyOfRange(newKeyAll, 0, 16);
 
-        this.messageParser = new MessageParser(device.getVersion(), newKey);
+        this.messageParser = new MessageParser(device.getVersion(), newKey).withDevId(device.getDevId());
+        TrafficCapture.getInstance().record(TrafficCapture.SESSION_KEY, device.getDevId(), newKey, newKey.length);
 
         return channel;
     }
@@ -195,8 +328,28 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
      * @throws IOException
      */
     private synchronized void connect() throws Exception {
+        connectStarted = System.nanoTime();
+        // The message in flight on the previous connection is written again.
+        inFlight = null;
+        if (key != null) {
+            // Drop the previous connection.
+            close(key.channel());
+            key.cancel();
+            key = null;
+        }
         if (device.getVersion() == Version.V3_5) {
-            SocketChannel channel = negotiate_session_key();
+            SessionKeyEvent event = new SessionKeyEvent();
+            event.begin();
+            SocketChannel channel = null;
+            try {
+                channel = negotiate_session_key();
+            } finally {
+                if (event.shouldCommit()) {
+                    event.devId = device.getDevId();
+                    event.success = channel != null;
+                    event.commit();
+                }
+            }
             key = TuyaClientService.getInstance().register(this, channel);
             heartbeatCnt.set(0);
             handleConnect(key);
@@ -214,32 +367,79 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
      * @throws ParseException
      */
     private void send(QueueItem item) throws Exception {
+        if (stopped) {
+            // E.g. a batch or a group command sent after the handler was disposed.
+            item.fail("client stopped");
+            return;
+        }
         if (!online || key == null) {
-            if (key != null) {
-                close(key.channel());
+            // Connect when the ConnectionScheduler admits it, the item waits in the queue until then.
+            ScheduledExecutorService current = scheduler;
+            if (current != null) {
+                ConnectionScheduler.getInstance().submit(this, ConnectionScheduler.PRIORITY_LOW, current);
             }
-            connect();
         }
         CommandByte command = item.getCommandByte();
+        if (command == CommandByte.CONTROL) {
+            poll.commanded(System.currentTimeMillis());
+        }
+        QueueEvent event = new QueueEvent();
         if (command.equals(CommandByte.HEART_BEAT) && queue.remainingCapacity() < DEFAULT_QUEUE_SIZE / 2) {
             heartbeatCnt.set(OUTSTANDING_HEARTBEATS_LIMIT);
             logger.debug("Skipping heartbeat since outstanding heartbeat > {}.", OUTSTANDING_HEARTBEATS_LIMIT);
+            commit(event, command, "skipped", 0);
         } else if (queue.remainingCapacity() == 0) {
+            metrics.increment(ClientMetrics.Counter.DROPPED_MESSAGES);
+            item.fail("send queue overflow");
+            commit(event, command, "dropped", 0);
             if (online) {
                 online = false;
                 emit(Event.CONNECTION_ERROR, new Message("send queue overflow"));
             }
         } else {
             // Remove conflicting items from the queue.
-            queue.removeIf(qi -> qi.isConflicting(item));
+            int size = queue.size();
+            queue.removeIf(qi -> {
+                // The message written last was sent already, its response is still expected.
+                if (qi != inFlight && qi.isConflicting(item)) {
+                    if (item.getDeviceState() instanceof MergedState && qi.getDeviceState() != null) {
+                        // Keep the dps of the superseded message that this one does not set.
+                        ((MergedState) item.getDeviceState()).mergeOlder(qi.getDeviceState());
+                    }
+                    qi.fail("superseded by a later command");
+                    return true;
+                }
+                return false;
+            });
+            int replaced = size - queue.size();
             queue.offer(item);
+            if (stopped && queue.remove(item)) {
+                // Stopped while queueing, the queue is already drained.
+                item.fail("client stopped");
+                return;
+            }
+            commit(event, command, replaced > 0 ? "replaced" : "queued", replaced);
             if (command.equals(CommandByte.HEART_BEAT)) {
                 if (heartbeatCnt.incrementAndGet() > HEARTBEAT_RETRIES) {
                     online = false;
                     emit(Event.CONNECTION_ERROR, new Message("no response to heartbeat"));
                 }
             }
-            if (online) key.interestOps(OP_WRITE);
+            SelectionKey current = key;
+            if (online && current != null) {
+                TuyaClientService.getInstance().requestWrite(current);
+            }
+        }
+    }
+
+    private void commit(QueueEvent event, CommandByte command, String decision, int replaced) {
+        if (event.shouldCommit()) {
+            event.devId = device.getDevId();
+            event.command = command.name();
+            event.decision = decision;
+            event.replaced = replaced;
+            event.depth = queue.size();
+            event.commit();
         }
     }
 
@@ -252,7 +452,84 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
      * @throws ParseException
      */
     public void send(DeviceState deviceState, CommandByte command) throws Exception {
-        send(new QueueItem(device, deviceState, command));
+        int window = TuyaClientService.getInstance().getCommandBatchMillis();
+        if (command == CommandByte.CONTROL && deviceState != null && window > 0 && scheduler != null) {
+            synchronized (queue) {
+                if (batch == null) {
+                    batch = new MergedState();
+                    batchTask = scheduler.schedule(this::sendBatch, window, TimeUnit.MILLISECONDS);
+                }
+                batch.merge(deviceState);
+            }
+        } else {
+            send(new QueueItem(device, deviceState, command));
+        }
+    }
+
+    /**
+     * Send a message without batching. The returned future completes with the response of the device, or
+     * exceptionally when the message is dropped.
+     *
+     * @param deviceState the deviceState object that will be transformed to a json string.
+     * @param command the commandbyte enum constant.
+     * @return the future response.
+     */
+    public CompletableFuture<Message> sendAsync(DeviceState deviceState, CommandByte command) {
+        CompletableFuture<Message> completion = new CompletableFuture<>();
+        try {
+            send(new QueueItem(device, deviceState, command).withCompletion(completion));
+        } catch (Exception e) {
+            completion.completeExceptionally(e);
+        }
+        return completion;
+    }
+
+    /**
+     * Remove the first message from the queue, without a response.
+     */
+    private void failHead(String reason) {
+        QueueItem item = queue.poll();
+        if (item != null) {
+            metrics.increment(ClientMetrics.Counter.DROPPED_MESSAGES);
+            item.fail(reason);
+        }
+    }
+
+    public String getDevId() {
+        return device.getDevId();
+    }
+
+    /**
+     * Create a parser with the local key of the device, e.g. to decode captured frames.
+     *
+     * @return the parser.
+     */
+    MessageParser newParser() {
+        return new MessageParser(device.getVersion(), device.getLocalKey()).withDevId(device.getDevId());
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Send the CONTROL commands of the batching window as a single message.
+     */
+    private void sendBatch() {
+        MergedState state;
+        synchronized (queue) {
+            state = batch;
+            batch = null;
+            batchTask = null;
+        }
+        if (state != null) {
+            logger.debug("Sending {} commands to device {} in one message.", state.getCount(), device.getDevId());
+            try {
+                send(new QueueItem(device, state, CommandByte.CONTROL));
+            } catch (Exception e) {
+                logger.error("Error sending commands.", e);
+            }
+        }
     }
 
     /**
@@ -264,6 +541,12 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
         if (this.key == key) {
             online = true;
             retryCnt.set(0);
+            long started = connectStarted;
+            if (started != 0) {
+                connectStarted = 0;
+                metrics.record(ClientMetrics.Latency.HANDSHAKE, System.nanoTime() - started);
+            }
+            ConnectionScheduler.getInstance().release(this, true);
             emit(Event.CONNECTED, null);
         }
     }
@@ -281,11 +564,12 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
             key.cancel();
             this.key = null;
         }
+        inFlight = null;
         online = false;
         if (ex == null) {
             emit(Event.DISCONNECTED, null);
         } else {
-            if (retryCnt.addAndGet(1) < MAX_RETRIES) {
+            if (retryCnt.addAndGet(1) < MAX_RETRIES && !isPoweredOff()) {
                 logger.debug("Connection error in retry window.");
                 emit(Event.CONNECTION_ERROR_WITHIN_RETRY, new Message(ex));
                 try {
@@ -298,45 +582,96 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
                 // Remove the message from the queue after max retries.
                 logger.debug("Connection error exceeds retries, cancel request.");
                 retryCnt.set(0);
-                queue.poll();
+                failHead("connection error");
+                ConnectionScheduler.getInstance().release(this, false);
                 emit(Event.CONNECTION_ERROR, new Message(ex));
             }
         }
     }
 
     /**
-     * Called by the service when data arrived.
+     * Called by the service when data arrived. The data is decoded and handled on the worker pool, so the selector
+     * thread is free to service other devices.
      *
      * @param key  the selection key.
      * @param data the raw data bytes.
      */
     void handleData(SelectionKey key, byte[] data) {
         logger.debug("Incoming message from {} with data {}", key, data);
+        health.lastReceived = System.currentTimeMillis();
+        metrics.increment(ClientMetrics.Counter.MESSAGES_RECEIVED);
+        metrics.add(ClientMetrics.Counter.BYTES_RECEIVED, data.length);
         try {
-            Message message = messageParser.decode(data);
+            inbound.execute(() -> processData(key, data));
+        } catch (RejectedExecutionException e) {
+            // Only after the service is stopped.
+            logger.debug("Worker pool rejected data of device '{}', dropped.", device.getDevId());
+        }
+    }
+
+    /**
+     * Decode the data, emit the message and complete the request it responds to, if any.
+     *
+     * @param key  the selection key.
+     * @param data the raw data bytes.
+     */
+    private void processData(SelectionKey key, byte[] data) {
+        Message message = null;
+        try {
+            message = messageParser.decode(data);
+            if (message.getCommandByte() == CommandByte.STATUS) {
+                poll.pushed(health.lastReceived);
+            } else if (message.getCommandByte() == CommandByte.DP_QUERY) {
+                poll.answered(health.lastReceived);
+            }
             if (message.getCommandByte().equals(CommandByte.HEART_BEAT)) {
                 if (heartbeatCnt.intValue() > 0) {
                     heartbeatCnt.decrementAndGet();
                 }
-            } else {
-                SocketChannel channel = (SocketChannel) key.channel();
-                String log = MessageFormat.format("Incoming message from {0} with Command {1}, Code: {2}, Data {3}", channel.getRemoteAddress(), message.getCommandByte().name(), message.getReturnCode(), message.getData());
-                if (message.getReturnCode() != 0) {
-                    logger.warn(log);
-                } else {
-                    logger.info(log);
+            } else if (message.getReturnCode() != 0) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Incoming message from {} with Command {}, Code: {}, Data {}",
+                            ((SocketChannel) key.channel()).getRemoteAddress(), message.getCommandByte().name(),
+                            message.getReturnCode(), message.getData());
                 }
+            } else if (logger.isInfoEnabled()) {
+                logger.info("Incoming message from {} with Command {}, Code: {}, Data {}",
+                        ((SocketChannel) key.channel()).getRemoteAddress(), message.getCommandByte().name(),
+                        message.getReturnCode(), message.getData());
             }
             emit(Event.MESSAGE_RECEIVED, message);
         } catch (Exception e) {
+            metrics.increment(ClientMetrics.Counter.DECODE_ERRORS);
             logger.error("Invalid message received.", e);
         }
-        queue.poll();
-        if (!queue.isEmpty() && key != null) {
-            key.interestOps(OP_WRITE);
+        // Only the response to the message written last completes it, pushed messages leave the queue alone.
+        QueueItem item = queue.peek();
+        boolean responded = message != null && item != null && item.isResponse(message) && queue.remove(item);
+        if (responded) {
+            // The latencies are only recorded for a matched response, pushed messages would skew them.
+            long now = System.nanoTime();
+            if (item.getCommandByte() == CommandByte.HEART_BEAT) {
+                metrics.record(ClientMetrics.Latency.HEARTBEAT_RTT, now - item.getLastWritten());
+            } else if (item.getCommandByte() == CommandByte.CONTROL && message.getReturnCode() == 0) {
+                metrics.record(ClientMetrics.Latency.COMMAND_ACK, now - item.getQueued());
+            }
+            item.complete(message);
+        }
+        if (responded && !queue.isEmpty() && key != null && key.isValid()) {
+            TuyaClientService.getInstance().requestWrite(key);
         }
     }
 
+    /**
+     * Return true when the discovery broadcasts of the device stopped, which means it is probably powered off. A device
+     * that recently broadcast is known to be alive.
+     *
+     * @return true when the device is probably powered off.
+     */
+    private boolean isPoweredOff() {
+        return DeviceRepository.getInstance().isExpired(device.getDevId());
+    }
+
     /**
      * Return true if running and connected.
      *
@@ -359,15 +694,36 @@ public class TuyaClient extends SingleEventEmitter<TuyaClient.Event, Message, Bo
         logger.debug("Write data requested for channel {}.", key.channel());
         SocketChannel channel = (SocketChannel) key.channel();
         try {
-            if (channel.isConnected() && !queue.isEmpty()) {
-                // Use peek to leave the message in the queue.
-                byte[] msgToBeSent = queue.peek().encode(messageParser, currentSequenceNo++);
+            QueueItem item = queue.peek();
+            if (item != null && item.isOverdue(System.nanoTime()) && queue.remove(item)) {
+                // Give up waiting for the response, and continue with the next message.
+                metrics.increment(ClientMetrics.Counter.DROPPED_MESSAGES);
+                item.fail("no response");
+                item = queue.peek();
+            }
+            if (item != null && item == inFlight) {
+                // Still waiting for the response, the next message is written when it arrives.
+                item = null;
+            }
+            if (channel.isConnected() && item != null) {
+                // Leave the message in the queue until the device responds.
+                long sequenceNo = currentSequenceNo++;
+                byte[] msgToBeSent = item.encode(messageParser, sequenceNo);
                 channel.write(ByteBuffer.wrap(msgToBeSent));
+                TrafficCapture.getInstance().record(TrafficCapture.TCP_OUT, device.getDevId(), msgToBeSent,
+                        msgToBeSent.length);
+                long now = System.nanoTime();
+                inFlight = item;
+                if (item.written(now, sequenceNo)) {
+                    metrics.record(ClientMetrics.Latency.QUEUE_WAIT, now - item.getQueued());
+                }
+                metrics.increment(ClientMetrics.Counter.MESSAGES_SENT);
+                metrics.add(ClientMetrics.Counter.BYTES_SENT, msgToBeSent.length);
             }
         } catch (Exception e) {
             logger.error("Exception in writeData.", e);
             if (retryCnt.addAndGet(1) >= MAX_RETRIES) {
-                queue.poll();
+                failHead("write error");
                 retryCnt.set(0);
             }
             return;
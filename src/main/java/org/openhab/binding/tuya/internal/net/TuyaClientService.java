@@ -20,10 +20,15 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openhab.binding.tuya.internal.exceptions.NoDataException;
 import org.slf4j.Logger;
@@ -41,7 +46,10 @@ public class TuyaClientService implements Runnable, TcpConfig {
     private static final TuyaClientService INSTANCE = new TuyaClientService();
 
     private final ExecutorService executor;
-    private Selector selector;
+    private volatile Selector selector;
+
+    // The pool decoding incoming frames, so the selector thread only moves bytes.
+    private final ThreadPoolExecutor workers;
 
     // Service status.
     private boolean running;
@@ -55,6 +63,13 @@ public class TuyaClientService implements Runnable, TcpConfig {
     // Table containing the clients. The Selection keys attachment are not suitable.
     private ConcurrentHashMap<SelectionKey, TuyaClient> clients = new ConcurrentHashMap<>();
 
+    // Keys of clients with messages to write. Interest ops are only changed on the selector thread, so the selector
+    // arms these keys for writing.
+    private final ConcurrentLinkedQueue<SelectionKey> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    // The batching window for commands of all clients.
+    private volatile int commandBatchMillis = DEFAULT_COMMAND_BATCH_MILLIS;
+
     private final Logger logger;
 
     /**
@@ -63,6 +78,14 @@ public class TuyaClientService implements Runnable, TcpConfig {
     private TuyaClientService() {
         logger = LoggerFactory.getLogger(this.getClass());
         executor = Executors.newSingleThreadExecutor();
+        int threads = Math.max(1, Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "tuya-decode-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.allowCoreThreadTimeOut(true);
     }
 
     /**
@@ -74,6 +97,55 @@ public class TuyaClientService implements Runnable, TcpConfig {
         return INSTANCE;
     }
 
+    /**
+     * Get the pool that decodes incoming frames. Clients use it through a SerialExecutor, to keep the messages of a
+     * device in order.
+     *
+     * @return the pool.
+     */
+    public Executor getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Ask the selector thread to write the next message of the client of the key. Other threads never change the
+     * interest ops of a key themselves, since they would race with the selector thread.
+     *
+     * @param key the selection key of the client.
+     */
+    public void requestWrite(SelectionKey key) {
+        pendingWrites.add(key);
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    /**
+     * Arm the keys of the write requests. Keys that are still connecting are armed when connected.
+     */
+    private void armPendingWrites() {
+        SelectionKey key;
+        while ((key = pendingWrites.poll()) != null) {
+            if (key.isValid() && (key.interestOps() & OP_CONNECT) == 0) {
+                key.interestOps(key.interestOps() | OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Set the window in which commands to the same device are combined into a single message.
+     *
+     * @param commandBatchMillis the window in milliseconds, 0 to send every command by itself.
+     */
+    public void setCommandBatchMillis(int commandBatchMillis) {
+        this.commandBatchMillis = Math.max(0, commandBatchMillis);
+    }
+
+    public int getCommandBatchMillis() {
+        return commandBatchMillis;
+    }
+
     /**
      * Create a SelectionKey for the given client, and register the client to be serviced.
      *
@@ -122,6 +194,7 @@ public class TuyaClientService implements Runnable, TcpConfig {
         while (running) {
             try {
                 selector.select(SELECTOR_TIMEOUT_MILLIS);
+                armPendingWrites();
 
                 Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
                 while (iterator.hasNext()) {
@@ -168,6 +241,7 @@ public class TuyaClientService implements Runnable, TcpConfig {
             key.channel().close();
             key.cancel();
             if (client != null) {
+                client.getMetrics().increment(ClientMetrics.Counter.CONNECT_ERRORS);
                 client.handleDisconnect(key, e);
             }
         }
@@ -200,6 +274,7 @@ public class TuyaClientService implements Runnable, TcpConfig {
             key.cancel();
             channel.close();
             if (client != null) {
+                client.getMetrics().increment(ClientMetrics.Counter.READ_ERRORS);
                 client.handleDisconnect(key, e);
             }
             return;
@@ -218,6 +293,7 @@ public class TuyaClientService implements Runnable, TcpConfig {
         if (client != null) {
             byte[] data = new byte[buffer.position()];
             arraycopy(buffer.array(), 0, data, 0, buffer.position());
+            TrafficCapture.getInstance().record(TrafficCapture.TCP_IN, client.getDevId(), data, data.length);
             client.handleData(key, data);
         }
     }
@@ -15,11 +15,41 @@ package org.openhab.binding.tuya.internal.net;
  */
 public interface UdpConfig {
 
-    // Setting for UDP broadcast listener (currently only encrypted implemented).
+    // Setting for UDP broadcast listener.
     public static final int DEFAULT_UNECRYPTED_UDP_PORT = 6666;
     public static final int DEFAULT_ECRYPTED_UDP_PORT = 6667;
+    public static final int DEFAULT_V3_5_UDP_PORT = 7000;
     public static final int UDP_SOCKET_TIMEOUT = 60000;
     public static final int UDP_SOCKET_BUFFER_SIZE = 1024;
+    // Number of distinct discovery datagrams kept to skip decryption of repeats.
+    public static final int PACKET_CACHE_SIZE = 1024;
+    // A device is considered gone after missing this many broadcasts.
+    public static final int LIVENESS_MISSED_BROADCASTS = 3;
+    public static final int LIVENESS_MIN_INTERVAL_MILLIS = 5000;
+    public static final int LIVENESS_CHECK_SECONDS = 10;
+
+    // Settings for the persistent discovery cache.
+    public static final String DISCOVERY_STORE_FILE = "discovery.cache";
+    public static final int DISCOVERY_STORE_FLUSH_SECONDS = 30;
+    public static final int DISCOVERY_STORE_LAST_SEEN_REFRESH_MINUTES = 10;
+    // Devices not seen for this long are not loaded from the cache.
+    public static final int DISCOVERY_STORE_MAX_AGE_DAYS = 30;
+
+    // Settings for reinitializing offline handlers when their device broadcasts.
+    public static final int REINIT_QUEUE_SIZE = 256;
+    public static final int REINIT_THREADS = 4;
+    public static final int REINIT_MIN_INTERVAL_SECONDS = 30;
+
+    // Settings for active discovery probes.
+    public static final int PROBE_BATCH_SIZE = 32;
+    public static final int PROBE_BATCH_DELAY_MILLIS = 50;
+    public static final int PROBE_ROUNDS = 3;
+    public static final int PROBE_ROUND_DELAY_SECONDS = 5;
+    // Subnets larger than this prefix length are not swept host by host.
+    public static final int PROBE_MIN_PREFIX_LENGTH = 22;
+
+    // Discoveries are published to the inbox in batches, after this quiet period.
+    public static final int DISCOVERY_PUBLISH_DELAY_MILLIS = 2000;
 
     // The default key to decrypt UDP broadcast messages.
     public static final String DEFAULT_UDP_KEY = "yGAdlopoPVldABfn";
@@ -24,6 +24,8 @@ import org.openhab.binding.tuya.internal.data.CommandByte;
 import org.openhab.binding.tuya.internal.data.Message;
 import org.openhab.binding.tuya.internal.data.Version;
 import org.openhab.binding.tuya.internal.exceptions.ParseException;
+import org.openhab.binding.tuya.internal.jfr.CipherEvent;
+import org.openhab.binding.tuya.internal.jfr.FrameEvent;
 
 /**
  * Parser for messages, with decryption where needed. Hence, a parser
@@ -38,6 +40,10 @@ public class MessageParser {
     // Helper class instances.
     private TuyaCipher cipher;
     private final Version version;
+    // The device id, for the flight recorder events.
+    private String devId = "";
+    // True for datagrams of the unencrypted discovery port, which may carry plain json.
+    private boolean plain;
 
     public MessageParser(Version version, String key) {
         this.version = version;
@@ -54,7 +60,58 @@ public class MessageParser {
         cipher = new TuyaCipher();
     }
 
+    /**
+     * Create a parser for UDP messages of the given version, using the default UDP key.
+     *
+     * @param version the protocol version.
+     */
+    public MessageParser(Version version) {
+        this.version = version;
+        cipher = new TuyaCipher();
+    }
+
+    /**
+     * Set the device id of the messages, for the flight recorder events.
+     *
+     * @param devId the device id.
+     * @return this parser.
+     */
+    public MessageParser withDevId(String devId) {
+        this.devId = devId;
+        return this;
+    }
+
+    /**
+     * Accept payloads that are plain json instead of encrypted. Only for the unencrypted discovery port: an encrypted
+     * payload may start with '{' as well.
+     *
+     * @return this parser.
+     */
+    public MessageParser withPlainPayloads() {
+        this.plain = true;
+        return this;
+    }
+
     public Message decode(byte[] buffer) throws ParseException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, UnsupportedEncodingException, NoSuchPaddingException, NoSuchAlgorithmException {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        Message message = null;
+        try {
+            message = decodeFrame(buffer);
+            return message;
+        } finally {
+            if (event.shouldCommit()) {
+                event.devId = devId;
+                event.operation = "decode";
+                event.version = version.name();
+                event.command = message == null ? null : message.getCommandByte().name();
+                event.size = buffer.length;
+                event.commit();
+            }
+        }
+    }
+
+    private Message decodeFrame(byte[] buffer) throws ParseException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, UnsupportedEncodingException, NoSuchPaddingException, NoSuchAlgorithmException {
         //https://github.com/jasonacox/tinytuya/discussions/260
         //String hex = BufferUtils.bytesToHex(buffer);
 
@@ -140,7 +197,8 @@ public class MessageParser {
                 payload = Arrays.copyOfRange(payload, 3 + 12, payload.length);
             }
 
-            byte[] data = cipher.decryptV3(payload);
+            // Broadcasts on the unencrypted port carry plain json.
+            byte[] data = plain && payload.length > 0 && payload[0] == '{' ? payload : decryptV3(payload);
             return new Message(sequenceNumber, returnCode, CommandByte.valueOf(Version.V3_3, (int) commandByte), data);
 
         } else if (prefix == 0x00006699) {
@@ -149,7 +207,7 @@ public class MessageParser {
             BufferUtils.copy(nonce, 0, buffer, 18, 12);
             BufferUtils.copy(header, 0, buffer, 4, 14);
 
-            byte[] dataWithReturnCode = cipher.decryptV5(payload, nonce, header);
+            byte[] dataWithReturnCode = decryptV5(payload, nonce, header);
             byte[] data = new byte[dataWithReturnCode.length - 4];
             BufferUtils.copy(data, 0, dataWithReturnCode, 4, dataWithReturnCode.length - 4);
             long returnCode = dataWithReturnCode[0] * 256 * 256 * 256 + dataWithReturnCode[1] * 256 * 256 + dataWithReturnCode[2] * 256 + dataWithReturnCode[3];
@@ -163,10 +221,29 @@ public class MessageParser {
     }
 
     public byte[] encode(byte[] input, CommandByte command, long sequenceNo) throws Exception {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        byte[] frame = null;
+        try {
+            frame = encodeFrame(input, command, sequenceNo);
+            return frame;
+        } finally {
+            if (event.shouldCommit()) {
+                event.devId = devId;
+                event.operation = "encode";
+                event.version = version.name();
+                event.command = command.name();
+                event.size = frame == null ? 0 : frame.length;
+                event.commit();
+            }
+        }
+    }
+
+    private byte[] encodeFrame(byte[] input, CommandByte command, long sequenceNo) throws Exception {
 
         if (version == Version.V3_3) {
             // Version 3.3 is always encrypted.
-            byte[] payload = cipher.encryptV3(input);
+            byte[] payload = encryptV3(input);
 
             // Check if we need an extended header. Depends on command.
             if (!(command == CommandByte.DP_QUERY || command == CommandByte.HEART_BEAT)) {
@@ -211,7 +288,7 @@ public class MessageParser {
 
             byte[] header = new byte[14];
             BufferUtils.copy(header, 0, buffer, 4, 2/*unknown*/ + 4/*sequence id*/ + 4/*command id*/ + 4/*length*/);
-            byte[] payload = cipher.encryptV5(input, nonce, header);
+            byte[] payload = encryptV5(input, nonce, header);
             BufferUtils.copy(buffer, 18 + 12, payload); /*variable length encrypted payload data*/
             BufferUtils.putUInt32(buffer, 18 + 12 + payload.length, 0x00009966);
             return buffer;
@@ -221,4 +298,61 @@ public class MessageParser {
         }
     }
 
+    // Cipher operations, recorded as flight recorder events.
+
+    private byte[] encryptV3(byte[] input) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            IllegalBlockSizeException, BadPaddingException, InvalidKeyException {
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        try {
+            return cipher.encryptV3(input);
+        } finally {
+            commit(event, "encrypt", "AES/ECB", input.length);
+        }
+    }
+
+    private byte[] decryptV3(byte[] input) throws IllegalBlockSizeException, NoSuchPaddingException,
+            NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        try {
+            return cipher.decryptV3(input);
+        } finally {
+            commit(event, "decrypt", "AES/ECB", input.length);
+        }
+    }
+
+    private byte[] encryptV5(byte[] input, byte[] iv, byte[] header)
+            throws InvalidAlgorithmParameterException, InvalidKeyException, NoSuchPaddingException,
+            NoSuchAlgorithmException, IllegalBlockSizeException, BadPaddingException {
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        try {
+            return cipher.encryptV5(input, iv, header);
+        } finally {
+            commit(event, "encrypt", "AES/GCM", input.length);
+        }
+    }
+
+    private byte[] decryptV5(byte[] input, byte[] iv, byte[] header)
+            throws IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException, BadPaddingException {
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        try {
+            return cipher.decryptV5(input, iv, header);
+        } finally {
+            commit(event, "decrypt", "AES/GCM", input.length);
+        }
+    }
+
+    private void commit(CipherEvent event, String operation, String algorithm, int size) {
+        if (event.shouldCommit()) {
+            event.devId = devId;
+            event.operation = operation;
+            event.algorithm = algorithm;
+            event.size = size;
+            event.commit();
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a shared executor, one at a time and in the order they were submitted. Many serial executors can share
+ * a small pool: tasks of different serial executors run in parallel, tasks of the same one never do. After a batch of
+ * tasks the executor yields the thread, so a busy source cannot starve the others.
+ *
+ * @author Wim Vissers.
+ */
+public class SerialExecutor implements Executor {
+
+    private final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Executor executor;
+    private final int batchSize;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // True while a drain is submitted to or running on the executor.
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Create a serial executor.
+     *
+     * @param executor the shared executor to run the tasks on.
+     * @param batchSize the maximum number of tasks to run before yielding the thread.
+     */
+    public SerialExecutor(Executor executor, int batchSize) {
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Run the task after the tasks submitted before.
+     *
+     * @param task the task.
+     * @throws RejectedExecutionException when the shared executor is shut down. The task is not queued then.
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        try {
+            schedule();
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            throw e;
+        }
+    }
+
+    /**
+     * Return the number of tasks waiting to run.
+     *
+     * @return the number of tasks.
+     */
+    public int getPending() {
+        return tasks.size();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            for (int i = 0; i < batchSize && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Task failed.", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
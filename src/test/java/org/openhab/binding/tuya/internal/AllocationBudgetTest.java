@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.openhab.binding.tuya.TuyaBindingConstants.CHANNEL_POWER;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.openhab.binding.tuya.internal.data.DeviceState;
+import org.openhab.binding.tuya.internal.data.Message;
+import org.openhab.binding.tuya.internal.data.SwitchState;
+import org.openhab.binding.tuya.internal.data.Version;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
+import org.openhab.binding.tuya.internal.net.QueueItem;
+import org.openhab.binding.tuya.internal.net.TuyaClient;
+import org.openhab.binding.tuya.internal.util.BufferUtils;
+import org.openhab.binding.tuya.internal.util.Crc;
+import org.openhab.binding.tuya.internal.util.MessageParser;
+import org.openhab.binding.tuya.internal.util.TuyaCipher;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ * Upper bounds on the bytes allocated per operation on the frame pipeline, measured with
+ * ThreadMXBean.getThreadAllocatedBytes after a warm-up. A change that puts garbage back on the per-frame path fails
+ * here instead of showing up as GC pauses on small hosts. The bounds leave room for JVM differences, not for new
+ * per-frame copies. The tests are skipped when the JVM cannot measure the allocations of a thread.
+ *
+ * @author Wim Vissers.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 10_000;
+
+    private static final String DEV_ID = "bf0123456789abcdefgh";
+    private static final String LOCAL_KEY = "0123456789abcdef";
+    private static final String STATUS = "{\"devId\":\"" + DEV_ID + "\",\"dps\":{\"1\":true},\"t\":1700000000}";
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private final DeviceDescriptor device = new DeviceDescriptor(new JsonDiscovery(DEV_ID, "3.3", "192.168.1.10"))
+            .withLocalKey(LOCAL_KEY);
+    private final MessageParser parser = new MessageParser(Version.V3_3, LOCAL_KEY);
+
+    @BeforeAll
+    public static void setUp() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+                threads = null;
+            }
+        }
+    }
+
+    @Test
+    public void decode() throws Exception {
+        byte[] frame = statusFrame();
+        assertBudget("MessageParser.decode", 8_192, () -> parser.decode(frame));
+    }
+
+    @Test
+    public void encode() throws Exception {
+        byte[] payload = STATUS.getBytes(StandardCharsets.UTF_8);
+        assertBudget("MessageParser.encode", 8_192, () -> parser.encode(payload, CommandByte.CONTROL, 1));
+    }
+
+    @Test
+    public void queueItemEncode() throws Exception {
+        QueueItem item = new QueueItem(device, new SwitchState().withPower(OnOffType.ON), CommandByte.CONTROL);
+        assertBudget("QueueItem.encode", 10_240, () -> item.encode(parser, 1));
+    }
+
+    @Test
+    public void toDeviceState() throws Exception {
+        Message message = parser.decode(statusFrame());
+        assertNotNull(message.toDeviceState(SwitchState.class));
+        // Includes the buffers of the reader on the raw bytes.
+        assertBudget("Message.toDeviceState", 16_384, () -> message.toDeviceState(SwitchState.class));
+    }
+
+    @Test
+    public void forChangedProperties() throws Exception {
+        SwitchState state = parser.decode(statusFrame()).toDeviceState(SwitchState.class);
+        assertBudget("DeviceState.forChangedProperties", 256, () -> state.forChangedProperties((channel, value) -> {
+        }));
+    }
+
+    @Test
+    public void dispatchCommand() throws Exception {
+        ThingUID thingUID = new ThingUID(new ThingTypeUID("tuya", "switch"), "test");
+        CommandDispatcher dispatcher = new CommandDispatcher(thingUID);
+        dispatcher.on(CHANNEL_POWER, OnOffType.class, (ev, command) -> new SwitchState().withPower(command));
+        ChannelUID channelUID = new ChannelUID(thingUID, CHANNEL_POWER);
+        TuyaClient client = new TuyaClient(device) {
+            @Override
+            public void send(DeviceState deviceState, CommandByte command) {
+                // Measure the dispatcher only.
+            }
+        };
+        assertTrue(dispatcher.dispatchCommand(client, channelUID, OnOffType.ON, CommandByte.CONTROL),
+                "command not dispatched");
+        assertBudget("CommandDispatcher.dispatchCommand", 256,
+                () -> dispatcher.dispatchCommand(client, channelUID, OnOffType.ON, CommandByte.CONTROL));
+    }
+
+    /**
+     * Build a status frame as sent by a version 3.3 device.
+     */
+    private static byte[] statusFrame() throws Exception {
+        byte[] payload = new TuyaCipher(LOCAL_KEY.getBytes(StandardCharsets.UTF_8))
+                .encryptV3(STATUS.getBytes(StandardCharsets.UTF_8));
+        byte[] frame = new byte[payload.length + 28];
+        BufferUtils.putUInt32(frame, 0, 0x000055AA);
+        BufferUtils.putUInt32(frame, 4, 1);
+        BufferUtils.putUInt32(frame, 8, CommandByte.STATUS.getValue(Version.V3_3));
+        BufferUtils.putUInt32(frame, 12, payload.length + 12);
+        BufferUtils.putUInt32(frame, 16, 0);
+        BufferUtils.copy(frame, 20, payload);
+        BufferUtils.putUInt32(frame, 20 + payload.length, Crc.crc32(frame, 0, 20 + payload.length));
+        BufferUtils.putUInt32(frame, 24 + payload.length, 0x0000AA55);
+        return frame;
+    }
+
+    private static void assertBudget(String operation, long budget, Operation op) throws Exception {
+        assumeTrue(threads != null, "allocation measurement not supported");
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        long perOperation = (threads.getThreadAllocatedBytes(id) - before) / ITERATIONS;
+        assertTrue(perOperation <= budget,
+                operation + " allocates " + perOperation + " bytes per operation, budget is " + budget);
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.openhab.binding.tuya.TuyaBindingConstants.CHANNEL_POWER;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.annotations.Channel;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.types.State;
+
+/**
+ * Tests the cached channel getter tables of DeviceState.forChangedProperties.
+ *
+ * @author Wim Vissers.
+ */
+public class DeviceStateTest {
+
+    @Test
+    public void publishesAnnotatedGetters() {
+        assertEquals(Map.of(CHANNEL_POWER, OnOffType.ON), changes(new SwitchState().withPower(OnOffType.ON)));
+    }
+
+    @Test
+    public void skipsNullStates() {
+        assertEquals(Map.of(), changes(new SwitchState()));
+    }
+
+    @Test
+    public void includesInheritedGetters() {
+        TestState state = new TestState();
+        state.withPower(OnOffType.OFF);
+        assertEquals(Map.of(CHANNEL_POWER, OnOffType.OFF, "counter", new DecimalType(42)), changes(state));
+    }
+
+    @Test
+    public void usesTheSameTableForEveryInstance() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Map.of(CHANNEL_POWER, OnOffType.ON), changes(new SwitchState().withPower(OnOffType.ON)));
+            assertEquals(2, changes(new TestState().withPower(OnOffType.ON)).size());
+        }
+    }
+
+    private static Map<String, State> changes(DeviceState<?> state) {
+        Map<String, State> result = new LinkedHashMap<>();
+        state.forChangedProperties(result::put);
+        return result;
+    }
+
+    /**
+     * A subclass with an extra channel, and methods that are not channel getters.
+     */
+    public static class TestState extends SwitchState {
+
+        @Channel("counter")
+        public DecimalType getCounter() {
+            return new DecimalType(42);
+        }
+
+        @Channel("notAState")
+        public String getName() {
+            return "name";
+        }
+
+        @Channel("withParameter")
+        public OnOffType getPower(int index) {
+            return OnOffType.ON;
+        }
+
+        public OnOffType getUnannotated() {
+            return OnOffType.ON;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
+import org.openhab.binding.tuya.internal.net.QueueItem;
+import org.openhab.core.library.types.OnOffType;
+
+/**
+ * Tests merging the dps of several commands, and superseding queued commands.
+ *
+ * @author Wim Vissers.
+ */
+public class MergedStateTest {
+
+    private final DeviceDescriptor device = new DeviceDescriptor(new JsonDiscovery("device", "3.3", "192.0.2.1"));
+
+    @Test
+    public void lastStateWins() {
+        MergedState state = new MergedState().merge(new SwitchState().withPower(OnOffType.ON)).set("2", 50)
+                .merge(new SwitchState().withPower(OnOffType.OFF));
+        assertEquals("{\"1\":false,\"2\":50}", state.toJson());
+        assertEquals(2, state.getCount());
+    }
+
+    @Test
+    public void conflictsWithControlSettingTheSameDp() {
+        MergedState queued = new MergedState().set("1", true).set("2", 50);
+        assertTrue(queued.isConflicting(control(new MergedState().set("2", 60))));
+        assertTrue(queued.isConflicting(control(new SwitchState().withPower(OnOffType.OFF))));
+        assertFalse(queued.isConflicting(control(new MergedState().set("3", "white"))));
+        assertFalse(queued.isConflicting(new QueueItem(device, new MergedState().set("1", false),
+                CommandByte.DP_QUERY)));
+        assertFalse(queued.isConflicting(new QueueItem(device, null, CommandByte.HEART_BEAT)));
+        assertFalse(queued.isConflicting(null));
+    }
+
+    @Test
+    public void keepsDpsOfOlderState() {
+        MergedState older = new MergedState().set("1", true).set("2", 50);
+        MergedState newer = new MergedState().set("2", 60).mergeOlder(older);
+        assertEquals("{\"2\":60,\"1\":true}", newer.toJson());
+    }
+
+    private QueueItem control(DeviceState<?> state) {
+        return new QueueItem(device, state, CommandByte.CONTROL);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.OnOffType;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Tests the streaming dps extraction of Message.toDeviceState.
+ *
+ * @author Wim Vissers.
+ */
+public class MessageTest {
+
+    @Test
+    public void readsTopLevelDps() {
+        assertEquals(OnOffType.ON, power("{\"devId\":\"abc\",\"dps\":{\"1\":true},\"t\":1700000000}"));
+        assertEquals(OnOffType.OFF, power("{\"dps\":{\"1\":false}}"));
+    }
+
+    @Test
+    public void readsNestedDps() {
+        assertEquals(OnOffType.ON, power("{\"protocol\":4,\"t\":1700000000,\"data\":{\"dps\":{\"1\":true}}}"));
+    }
+
+    @Test
+    public void prefersTopLevelDpsOverNestedDps() {
+        assertEquals(OnOffType.ON, power("{\"data\":{\"dps\":{\"1\":false}},\"dps\":{\"1\":true}}"));
+    }
+
+    @Test
+    public void searchesNestedObjectsInOrder() {
+        // Each nested object is searched completely before the next one.
+        assertEquals(OnOffType.OFF,
+                power("{\"a\":{\"b\":{\"dps\":{\"1\":false}}},\"c\":{\"dps\":{\"1\":true}},\"d\":[{\"x\":1}]}"));
+    }
+
+    @Test
+    public void readsDpsFromObjectsInArrays() {
+        assertEquals(OnOffType.ON, power("{\"list\":[1,\"dps\",{\"dps\":{\"1\":true}}]}"));
+    }
+
+    @Test
+    public void ignoresBytesAfterTheText() {
+        byte[] text = "{\"dps\":{\"1\":true}}".getBytes(StandardCharsets.UTF_8);
+        byte[] data = Arrays.copyOf(text, text.length + 16);
+        data[text.length + 1] = '}';
+        assertEquals(OnOffType.ON, new Message(1, 0, CommandByte.STATUS, data).toDeviceState(SwitchState.class)
+                .getPower());
+    }
+
+    @Test
+    public void returnsStateWithoutDps() {
+        assertNotNull(message("{\"devId\":\"abc\",\"t\":1700000000}").toDeviceState(SwitchState.class));
+    }
+
+    @Test
+    public void returnsNullForEmptyPayload() {
+        assertNull(new Message(1, 0, CommandByte.STATUS, new byte[0]).toDeviceState(SwitchState.class));
+    }
+
+    @Test
+    public void rejectsTruncatedPayload() {
+        assertThrows(JsonSyntaxException.class, () -> message("{\"dps\":{\"1\":").toDeviceState(SwitchState.class));
+    }
+
+    private static OnOffType power(String json) {
+        return message(json).toDeviceState(SwitchState.class).getPower();
+    }
+
+    private static Message message(String json) {
+        return new Message(1, 0, CommandByte.STATUS, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.discovery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.openhab.binding.tuya.TuyaBindingConstants.BINDING_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.handler.AbstractTuyaHandler;
+import org.openhab.binding.tuya.handler.SwitchHandler;
+import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+
+/**
+ * Tests the per-device subscriptions of the DeviceRepository, and the reinitialization of offline handlers. The
+ * repository is a singleton, so every test uses its own device ids.
+ *
+ * @author Wim Vissers.
+ */
+public class DeviceRepositoryTest {
+
+    private final DeviceRepository repository = DeviceRepository.getInstance();
+
+    @AfterEach
+    public void tearDown() {
+        repository.removeAllHandlers();
+    }
+
+    @Test
+    public void deliversToSubscribersOfTheDeviceOnly() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        repository.on("subscribed1", first).on("subscribed2", second);
+        repository.processDiscovery(new JsonDiscovery("subscribed1", "3.3", "192.168.1.10"));
+        assertEquals(List.of("subscribed1"), first.devIds);
+        assertEquals(List.of(), second.devIds);
+    }
+
+    @Test
+    public void replaysOnlyTheSubscribedDevice() {
+        repository.processDiscovery(new JsonDiscovery("replay1", "3.3", "192.168.1.10"));
+        repository.processDiscovery(new JsonDiscovery("replay2", "3.3", "192.168.1.11"));
+        Recorder recorder = new Recorder();
+        repository.on("replay2", recorder);
+        assertEquals(List.of("replay2"), recorder.devIds);
+        assertSame(repository.getDeviceDescriptor("replay2"), recorder.devices.get(0));
+    }
+
+    @Test
+    public void deliversToEverySubscriberOfTheDevice() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        repository.on("shared", (devId, device) -> {
+            throw new IllegalStateException("failing subscriber");
+        });
+        repository.on("shared", first).on("shared", second);
+        repository.processDiscovery(new JsonDiscovery("shared", "3.3", "192.168.1.10"));
+        assertEquals(List.of("shared"), first.devIds);
+        assertEquals(List.of("shared"), second.devIds);
+    }
+
+    @Test
+    public void removesOnlyTheGivenSubscriber() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        repository.on("removed", first).on("removed", second);
+        repository.removeHandler("removed", first);
+        repository.processDiscovery(new JsonDiscovery("removed", "3.3", "192.168.1.10"));
+        assertEquals(List.of(), first.devIds);
+        assertEquals(List.of("removed"), second.devIds);
+    }
+
+    @Test
+    public void deliversMovedDevice() {
+        Recorder recorder = new Recorder();
+        repository.processDiscovery(new JsonDiscovery("moved", "3.3", "192.168.1.10"));
+        repository.on("moved", recorder);
+        repository.processDiscovery(new JsonDiscovery("moved", "3.3", "192.168.1.20"));
+        assertEquals(List.of("moved", "moved"), recorder.devIds);
+        assertEquals("192.168.1.20", recorder.devices.get(1).getIp());
+    }
+
+    @Test
+    public void queuesOfflineHandlerOfKnownDevice() {
+        JsonDiscovery broadcast = new JsonDiscovery("offline", "3.3", "192.168.1.10");
+        repository.processDiscovery(broadcast);
+        // Like the handler does when it finds its device.
+        DeviceDescriptor device = repository.getDeviceDescriptor("offline").withLocalKey("0123456789abcdef");
+        SwitchHandler handler = new SwitchHandler(
+                ThingBuilder.create(new ThingTypeUID(BINDING_ID, "switch"), "offline").build());
+        device.setHandler(handler);
+        RecordingQueue queue = new RecordingQueue();
+        repository.setReinitializationQueue(queue);
+        try {
+            repository.processDiscovery(broadcast);
+        } finally {
+            repository.setReinitializationQueue(null);
+            queue.shutdown();
+        }
+        assertEquals(List.of("offline"), queue.devIds);
+        assertSame(handler, queue.handlers.get(0));
+    }
+
+    @Test
+    public void doesNotQueueDeviceWithoutHandler() {
+        JsonDiscovery broadcast = new JsonDiscovery("unhandled", "3.3", "192.168.1.10");
+        repository.processDiscovery(broadcast);
+        RecordingQueue queue = new RecordingQueue();
+        repository.setReinitializationQueue(queue);
+        try {
+            repository.processDiscovery(broadcast);
+        } finally {
+            repository.setReinitializationQueue(null);
+            queue.shutdown();
+        }
+        assertEquals(List.of(), queue.devIds);
+    }
+
+    /**
+     * Records the handlers submitted, without reinitializing them.
+     */
+    private static class RecordingQueue extends ReinitializationQueue {
+
+        private final List<String> devIds = new ArrayList<>();
+        private final List<AbstractTuyaHandler> handlers = new ArrayList<>();
+
+        RecordingQueue() {
+            super(1, 1, 0);
+        }
+
+        @Override
+        public boolean submit(String devId, AbstractTuyaHandler handler) {
+            devIds.add(devId);
+            handlers.add(handler);
+            return true;
+        }
+    }
+
+    /**
+     * Records the devices it is called with.
+     */
+    private static class Recorder implements BiFunction<String, DeviceDescriptor, Boolean> {
+
+        private final List<String> devIds = new ArrayList<>();
+        private final List<DeviceDescriptor> devices = new ArrayList<>();
+
+        @Override
+        public Boolean apply(String devId, DeviceDescriptor device) {
+            devIds.add(devId);
+            devices.add(device);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.discovery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the hits, misses and eviction of the PacketCache.
+ *
+ * @author Wim Vissers.
+ */
+public class PacketCacheTest {
+
+    private final JsonDiscovery first = new JsonDiscovery("device1", "3.3", "192.168.1.10");
+    private final JsonDiscovery second = new JsonDiscovery("device2", "3.3", "192.168.1.11");
+
+    @Test
+    public void missesUnknownDatagram() {
+        PacketCache cache = new PacketCache(4);
+        assertNull(cache.get(new byte[] { 1, 2, 3 }, 3));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void hitsRepeatedDatagram() {
+        PacketCache cache = new PacketCache(4);
+        cache.put(new byte[] { 1, 2, 3 }, first);
+        // The receive buffer is larger than the datagram, only the first bytes count.
+        byte[] buffer = Arrays.copyOf(new byte[] { 1, 2, 3 }, 64);
+        buffer[10] = 42;
+        assertSame(first, cache.get(buffer, 3));
+        assertSame(first, cache.get(buffer, 3));
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(1.0, cache.getHitRatio());
+    }
+
+    @Test
+    public void missesDifferentLengthOrContent() {
+        PacketCache cache = new PacketCache(4);
+        cache.put(new byte[] { 1, 2, 3 }, first);
+        assertNull(cache.get(new byte[] { 1, 2, 3, 4 }, 4));
+        assertNull(cache.get(new byte[] { 1, 2, 4 }, 3));
+        assertNull(cache.get(new byte[] { 1, 2, 3 }, 2));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlySeen() {
+        PacketCache cache = new PacketCache(2);
+        cache.put(new byte[] { 1 }, first);
+        cache.put(new byte[] { 2 }, second);
+        // Seeing the first datagram again makes the second one the eldest.
+        assertSame(first, cache.get(new byte[] { 1 }, 1));
+        cache.put(new byte[] { 3 }, first);
+        assertNull(cache.get(new byte[] { 2 }, 1));
+        assertSame(first, cache.get(new byte[] { 1 }, 1));
+        assertSame(first, cache.get(new byte[] { 3 }, 1));
+    }
+
+    @Test
+    public void clearRemovesEntries() {
+        PacketCache cache = new PacketCache(4);
+        cache.put(new byte[] { 1, 2, 3 }, first);
+        cache.clear();
+        assertNull(cache.get(new byte[] { 1, 2, 3 }, 3));
+    }
+}
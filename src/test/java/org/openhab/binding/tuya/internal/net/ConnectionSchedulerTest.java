@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
+
+/**
+ * Tests the admission of connecting clients, with clients that only record when they are started.
+ *
+ * @author Wim Vissers.
+ */
+public class ConnectionSchedulerTest {
+
+    private final ConnectionScheduler connections = ConnectionScheduler.getInstance();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final List<TuyaClient> clients = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(connections::cancel);
+        connections.setConcurrency(TcpConfig.DEFAULT_CONNECT_CONCURRENCY);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void limitsTheClientsConnectingInParallel() throws Exception {
+        connections.setConcurrency(2);
+        TuyaClient a = client("a");
+        connections.submit(a, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(client("b"), ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(client("c"), ConnectionScheduler.PRIORITY_LOW, scheduler);
+        assertStarted("a", "b");
+        connections.release(a, true);
+        assertStarted("a", "b", "c");
+    }
+
+    @Test
+    public void admitsByPriorityThenByArrival() throws Exception {
+        connections.setConcurrency(1);
+        TuyaClient first = client("first");
+        TuyaClient low1 = client("low1");
+        TuyaClient high = client("high");
+        TuyaClient low2 = client("low2");
+        connections.submit(first, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(low1, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(high, ConnectionScheduler.PRIORITY_HIGH, scheduler);
+        connections.submit(low2, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.release(first, true);
+        connections.release(high, false);
+        connections.release(low1, true);
+        assertStarted("first", "high", "low1", "low2");
+    }
+
+    @Test
+    public void queuesAClientOnlyOnce() throws Exception {
+        connections.setConcurrency(1);
+        TuyaClient first = client("first");
+        TuyaClient second = client("second");
+        connections.submit(first, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(first, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(second, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(second, ConnectionScheduler.PRIORITY_HIGH, scheduler);
+        connections.release(first, true);
+        connections.release(second, true);
+        assertStarted("first", "second");
+    }
+
+    @Test
+    public void cancelledClientIsNotStarted() throws Exception {
+        connections.setConcurrency(1);
+        TuyaClient first = client("first");
+        TuyaClient cancelled = client("cancelled");
+        connections.submit(first, ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.submit(cancelled, ConnectionScheduler.PRIORITY_HIGH, scheduler);
+        connections.submit(client("last"), ConnectionScheduler.PRIORITY_LOW, scheduler);
+        connections.cancel(cancelled);
+        connections.cancel(first);
+        assertStarted("first", "last");
+    }
+
+    private TuyaClient client(String devId) {
+        TuyaClient client = new TuyaClient(
+                new DeviceDescriptor(new JsonDiscovery(devId, "3.3", "192.0.2.1")).withLocalKey("0123456789abcdef")) {
+            @Override
+            public synchronized void start(ScheduledExecutorService scheduler) {
+                started.add(devId);
+            }
+        };
+        clients.add(client);
+        return client;
+    }
+
+    private void assertStarted(String... devIds) throws Exception {
+        // The clients are started on the scheduler, wait for the starts submitted so far.
+        scheduler.submit(() -> {
+        }).get();
+        assertEquals(Arrays.asList(devIds), started);
+    }
+}
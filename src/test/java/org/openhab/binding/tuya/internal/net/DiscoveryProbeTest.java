@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.net.DiscoveryProbe.Target;
+
+/**
+ * Tests the probe targets of the DiscoveryProbe for subnets of different sizes.
+ *
+ * @author Wim Vissers.
+ */
+public class DiscoveryProbeTest implements UdpConfig {
+
+    @Test
+    public void probesEveryHostOfSlash24() throws Exception {
+        Set<InetSocketAddress> targets = targets("192.168.1.10", "192.168.1.255", 24);
+        // The broadcast address and 254 hosts, without the local address.
+        assertEquals(254, targets.size());
+        assertTrue(targets.contains(address("192.168.1.255")));
+        assertTrue(targets.contains(address("192.168.1.1")));
+        assertTrue(targets.contains(address("192.168.1.254")));
+        assertFalse(targets.contains(address("192.168.1.10")));
+        assertFalse(targets.contains(address("192.168.1.0")));
+    }
+
+    @Test
+    public void probesEveryHostOfSlash22() throws Exception {
+        Set<InetSocketAddress> targets = targets("10.0.5.20", "10.0.7.255", 22);
+        // The broadcast address and 1022 hosts, without the local address.
+        assertEquals(1022, targets.size());
+        assertTrue(targets.contains(address("10.0.4.1")));
+        assertTrue(targets.contains(address("10.0.7.254")));
+        assertFalse(targets.contains(address("10.0.5.20")));
+        assertFalse(targets.contains(address("10.0.8.1")));
+    }
+
+    @Test
+    public void onlyBroadcastsToLargerSubnets() throws Exception {
+        Set<InetSocketAddress> targets = targets("10.0.5.20", "10.0.7.255", PROBE_MIN_PREFIX_LENGTH - 1);
+        assertEquals(Set.of(address("10.0.7.255")), targets);
+    }
+
+    @Test
+    public void onlyBroadcastsToPointToPointSubnets() throws Exception {
+        assertEquals(1, targets("10.0.0.1", "10.0.0.1", 31).size());
+    }
+
+    private static Set<InetSocketAddress> targets(String local, String broadcast, int prefix) throws Exception {
+        List<Target> targets = new ArrayList<>();
+        DiscoveryProbe.addTargets(targets, InetAddress.getByName(local), InetAddress.getByName(broadcast), prefix);
+        Set<InetSocketAddress> result = new HashSet<>();
+        for (Target target : targets) {
+            result.add(target.address);
+        }
+        assertEquals(targets.size(), result.size(), "duplicate targets");
+        return result;
+    }
+
+    private static InetSocketAddress address(String host) throws Exception {
+        return new InetSocketAddress(InetAddress.getByName(host), DEFAULT_V3_5_UDP_PORT);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.openhab.binding.tuya.internal.net.TcpConfig.POLL_COMMAND_WINDOW_SECONDS;
+import static org.openhab.binding.tuya.internal.net.TcpConfig.POLL_GAP_FACTOR;
+import static org.openhab.binding.tuya.internal.net.TcpConfig.POLL_MAX_INTERVAL_SECONDS;
+import static org.openhab.binding.tuya.internal.net.TcpConfig.POLL_MIN_INTERVAL_SECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the poll interval of a device.
+ *
+ * @author Wim Vissers.
+ */
+public class PollSchedulerTest {
+
+    private static final long MIN = TimeUnit.SECONDS.toMillis(POLL_MIN_INTERVAL_SECONDS);
+    private static final long MAX = TimeUnit.SECONDS.toMillis(POLL_MAX_INTERVAL_SECONDS);
+    private static final long START = TimeUnit.DAYS.toMillis(1);
+
+    private final PollScheduler.Poll poll = new PollScheduler.Poll();
+
+    @Test
+    public void silentDeviceIsPolledAtTheMaximumInterval() {
+        assertEquals(MAX, poll.interval(START));
+        poll.pushed(START);
+        assertEquals(MAX, poll.interval(START));
+    }
+
+    @Test
+    public void followsTheAverageGapBetweenPushes() {
+        long gap = TimeUnit.SECONDS.toMillis(20);
+        push(gap, 10);
+        assertEquals(gap * POLL_GAP_FACTOR, poll.interval(poll.lastPush));
+    }
+
+    @Test
+    public void staysWithinTheBounds() {
+        push(100, 10);
+        assertEquals(MIN, poll.interval(poll.lastPush));
+        push(MAX, 10);
+        assertEquals(MAX, poll.interval(poll.lastPush));
+    }
+
+    @Test
+    public void adaptsGraduallyToANewGap() {
+        long gap = TimeUnit.SECONDS.toMillis(20);
+        push(gap, 10);
+        poll.pushed(poll.lastPush + 4 * gap);
+        long interval = poll.interval(poll.lastPush);
+        assertTrue(interval > gap * POLL_GAP_FACTOR && interval < 4 * gap * POLL_GAP_FACTOR);
+    }
+
+    @Test
+    public void answersDoNotCountAsPushes() {
+        poll.pushed(START);
+        poll.answered(START + MIN);
+        poll.answered(START + 2 * MIN);
+        assertEquals(MAX, poll.interval(START + 2 * MIN));
+        assertEquals(START + 2 * MIN + MAX, poll.next);
+    }
+
+    @Test
+    public void commandShortensTheInterval() {
+        poll.pushed(START);
+        poll.commanded(START + 1000);
+        assertEquals(START + 1000 + MIN, poll.next);
+        long later = START + 1000 + TimeUnit.SECONDS.toMillis(POLL_COMMAND_WINDOW_SECONDS);
+        assertEquals(MAX, poll.interval(later));
+    }
+
+    private void push(long gap, int count) {
+        long time = poll.lastPush == 0 ? START : poll.lastPush;
+        for (int i = 0; i < count; i++) {
+            time += gap;
+            poll.pushed(time);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.openhab.binding.tuya.internal.data.Message;
+import org.openhab.binding.tuya.internal.data.SwitchState;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
+import org.openhab.core.library.types.OnOffType;
+
+/**
+ * Tests matching the responses of a device to the queued messages.
+ *
+ * @author Wim Vissers.
+ */
+public class QueueItemTest {
+
+    private final DeviceDescriptor device = new DeviceDescriptor(new JsonDiscovery("device", "3.3", "192.0.2.1"));
+    private final QueueItem control = new QueueItem(device, new SwitchState().withPower(OnOffType.ON),
+            CommandByte.CONTROL);
+
+    @Test
+    public void matchesResponseToTheLastWrite() {
+        control.written(1, 5);
+        assertTrue(control.isResponse(message(CommandByte.CONTROL, 5)));
+        control.written(2, 6);
+        assertFalse(control.isResponse(message(CommandByte.CONTROL, 5)));
+        assertTrue(control.isResponse(message(CommandByte.CONTROL, 6)));
+    }
+
+    @Test
+    public void matchesResponseWithoutSequenceNumber() {
+        control.written(1, 5);
+        assertTrue(control.isResponse(message(CommandByte.CONTROL, 0)));
+    }
+
+    @Test
+    public void ignoresPushedMessages() {
+        control.written(1, 5);
+        assertFalse(control.isResponse(message(CommandByte.STATUS, 5)));
+        assertFalse(control.isResponse(message(CommandByte.STATUS, 0)));
+        assertFalse(control.isResponse(message(CommandByte.HEART_BEAT, 5)));
+    }
+
+    @Test
+    public void ignoresResponsesBeforeTheWrite() {
+        assertFalse(control.isResponse(message(CommandByte.CONTROL, 0)));
+    }
+
+    @Test
+    public void isOverdueWithoutResponse() {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(TcpConfig.RESPONSE_TIMEOUT_MILLIS);
+        assertFalse(control.isOverdue(timeout * 2));
+        control.written(1000, 5);
+        assertFalse(control.isOverdue(1000 + timeout));
+        assertTrue(control.isOverdue(1001 + timeout));
+        // Written again, e.g. after a reconnect.
+        control.written(2000 + timeout, 6);
+        assertFalse(control.isOverdue(1001 + timeout));
+    }
+
+    private static Message message(CommandByte command, long sequenceNo) {
+        return new Message(sequenceNo, 0, command, new byte[0]);
+    }
+}
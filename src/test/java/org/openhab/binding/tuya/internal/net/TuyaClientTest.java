@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.tuya.internal.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.tuya.internal.data.CommandByte;
+import org.openhab.binding.tuya.internal.data.MergedState;
+import org.openhab.binding.tuya.internal.data.Message;
+import org.openhab.binding.tuya.internal.data.SwitchState;
+import org.openhab.binding.tuya.internal.discovery.DeviceDescriptor;
+import org.openhab.binding.tuya.internal.discovery.JsonDiscovery;
+import org.openhab.core.library.types.OnOffType;
+
+/**
+ * Tests the TuyaClient without a device.
+ *
+ * @author Wim Vissers.
+ */
+public class TuyaClientTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final TuyaClient client = new TuyaClient(
+            new DeviceDescriptor(new JsonDiscovery("bf0123456789abcdefgh", "3.3", "192.0.2.1"))
+                    .withLocalKey("0123456789abcdef"));
+
+    @AfterEach
+    public void tearDown() {
+        client.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void laterControlSupersedesQueuedControl() {
+        // Not started, so the messages wait in the queue.
+        CompletableFuture<Message> first = client.sendAsync(new MergedState().set("1", true).set("2", 50),
+                CommandByte.CONTROL);
+        MergedState later = new MergedState().set("2", 60);
+        CompletableFuture<Message> second = client.sendAsync(later, CommandByte.CONTROL);
+        assertTrue(first.isCompletedExceptionally());
+        assertFalse(second.isDone());
+        assertEquals("{\"2\":60,\"1\":true}", later.toJson());
+    }
+
+    @Test
+    public void unrelatedControlIsKept() {
+        CompletableFuture<Message> first = client.sendAsync(new MergedState().set("1", true), CommandByte.CONTROL);
+        client.sendAsync(new MergedState().set("2", 60), CommandByte.CONTROL);
+        assertFalse(first.isDone());
+    }
+
+    @Test
+    public void stoppedClientIsNotStarted() {
+        client.stop();
+        client.start(scheduler);
+        client.start(scheduler, ConnectionScheduler.PRIORITY_HIGH);
+        assertFalse(client.isStarted());
+        assertFalse(client.isOnline());
+    }
+
+    @Test
+    public void stoppedClientFailsMessages() throws Exception {
+        client.stop();
+        CompletableFuture<Message> response = client.sendAsync(new SwitchState().withPower(OnOffType.ON),
+                CommandByte.CONTROL);
+        assertTrue(response.isCompletedExceptionally());
+        client.send(new SwitchState().withPower(OnOffType.OFF), CommandByte.CONTROL);
+        assertFalse(client.isStarted());
+    }
+}